@@ -0,0 +1,149 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.pepzer.rest_jpa_test.Application;
+import com.github.pepzer.rest_jpa_test.search.CatalogueSearchIndex;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Boots the application against a private in-memory H2 database and seeds it with
+ * a configurable number of authors, books and author_book links.
+ */
+public class BenchmarkContext {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final ConfigurableApplicationContext context;
+    private final MockMvc mockMvc;
+    private final long[] authorIds;
+    private final long[] bookIds;
+
+    public BenchmarkContext(int authors, int books, int booksPerAuthor, String... properties) {
+        // Command line arguments, they take precedence over application.properties
+        List<String> args = new ArrayList<>();
+        args.add("--server.port=0");
+        args.add("--spring.datasource.url=jdbc:h2:mem:benchmark-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        args.add("--logging.level.root=WARN");
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        // The read benchmarks measure the handlers, the response cache is off unless asked for
+        if (args.stream().noneMatch(arg -> arg.startsWith("--response-cache.enabled="))) {
+            args.add("--response-cache.enabled=false");
+        }
+        context = new SpringApplicationBuilder(Application.class).run(args.toArray(new String[0]));
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        seed(jdbc, authors, books, booksPerAuthor);
+        // The rows were inserted behind Hibernate's back
+        context.getBean(CatalogueSearchIndex.class).rebuild();
+        authorIds = jdbc.queryForList("SELECT id FROM authors ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue).toArray();
+        bookIds = jdbc.queryForList("SELECT id FROM books ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue).toArray();
+    }
+
+    private static void seed(JdbcTemplate jdbc, int authors, int books, int booksPerAuthor) {
+        // Ids come from pooled sequences: insert explicit ids after the existing rows, then move
+        // the sequences past them
+        long firstAuthor = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM authors", Long.class);
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < authors; i++) {
+            rows.add(new Object[] { firstAuthor + i, "First" + i, "Last" + (i % 1000) });
+            if (rows.size() == BATCH_SIZE) {
+                jdbc.batchUpdate("INSERT INTO authors (id, firstname, lastname, version) VALUES (?, ?, ?, 0)", rows);
+                rows.clear();
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO authors (id, firstname, lastname, version) VALUES (?, ?, ?, 0)", rows);
+        rows.clear();
+        jdbc.execute("ALTER SEQUENCE author_seq RESTART WITH " + (firstAuthor + authors + 100));
+
+        long firstBook = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM books", Long.class);
+        for (int i = 0; i < books; i++) {
+            rows.add(new Object[] { firstBook + i, String.format("9%012d", i), "Title" + i });
+            if (rows.size() == BATCH_SIZE) {
+                jdbc.batchUpdate("INSERT INTO books (id, isbn, title, version) VALUES (?, ?, ?, 0)", rows);
+                rows.clear();
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO books (id, isbn, title, version) VALUES (?, ?, ?, 0)", rows);
+        rows.clear();
+        jdbc.execute("ALTER SEQUENCE book_seq RESTART WITH " + (firstBook + books + 100));
+
+        if (books == 0) {
+            return;
+        }
+        List<Long> seededAuthors = jdbc.queryForList("SELECT id FROM authors WHERE firstname LIKE 'First%' ORDER BY id",
+                Long.class);
+        List<Long> seededBooks = jdbc.queryForList("SELECT id FROM books WHERE title LIKE 'Title%' ORDER BY id",
+                Long.class);
+        int perAuthor = Math.min(booksPerAuthor, books);
+        for (int i = 0; i < seededAuthors.size(); i++) {
+            for (int k = 0; k < perAuthor; k++) {
+                rows.add(new Object[] { seededAuthors.get(i), seededBooks.get((i * perAuthor + k) % books) });
+                if (rows.size() == BATCH_SIZE) {
+                    jdbc.batchUpdate("INSERT INTO author_book (author_id, book_id) VALUES (?, ?)", rows);
+                    rows.clear();
+                }
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO author_book (author_id, book_id) VALUES (?, ?)", rows);
+    }
+
+    public ConfigurableApplicationContext getContext() {
+        return context;
+    }
+
+    public MockMvc getMockMvc() {
+        return mockMvc;
+    }
+
+    public long[] getAuthorIds() {
+        return authorIds;
+    }
+
+    public long[] getBookIds() {
+        return bookIds;
+    }
+
+    /**
+     * A GET on the embedded server (server.port=0 unless overridden), the body is read and dropped.
+     */
+    public int httpGet(String path) throws IOException {
+        return httpGet(context, path);
+    }
+
+    static int httpGet(ConfigurableApplicationContext context, String path) throws IOException {
+        String port = context.getEnvironment().getProperty("local.server.port");
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        int status = connection.getResponseCode();
+        byte[] buffer = new byte[8192];
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            while (body != null && body.read(buffer) != -1) {
+                // drain, the connection goes back to the keep-alive pool
+            }
+        }
+        if (status != 200) {
+            throw new IllegalStateException("GET " + path + " answered " + status);
+        }
+        return status;
+    }
+
+    public void close() {
+        context.close();
+    }
+}
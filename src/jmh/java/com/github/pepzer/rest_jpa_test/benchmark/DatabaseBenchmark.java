@@ -0,0 +1,76 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of GET /authors over HTTP by 16 clients for the database.* settings: H2 in memory or
+ * behind its TCP server (a file database in a temporary directory), the pool size, the H2
+ * statement cache and the fetch size of the page query (0 leaves the driver's, 100 rows per round
+ * trip with the TCP server).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    @Param({ "10000" })
+    int authors;
+
+    @Param({ "mem", "server" })
+    String h2Mode;
+
+    @Param({ "2", "10" })
+    int poolSize;
+
+    @Param({ "8", "64" })
+    int statementCacheSize;
+
+    @Param({ "0", "1000" })
+    int fetchSize;
+
+    @Param({ "20", "500" })
+    int pageSize;
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = new BenchmarkContext(authors, 0, 0, "server.tomcat.max-threads=16", "database.h2.mode=" + h2Mode,
+                "database.h2.directory=" + Files.createTempDirectory("h2-benchmark"), "database.h2.port=9093",
+                "database.pool.maximum-size=" + poolSize, "database.statement-cache-size=" + statementCacheSize,
+                "database.fetch-size.queries[AuthorRepository.findAllViews]=" + fetchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public int getAuthors() throws IOException {
+        int page = ThreadLocalRandom.current().nextInt(Math.max(1, authors / pageSize));
+        return bench.httpGet("/authors?size=" + pageSize + "&page=" + page);
+    }
+}
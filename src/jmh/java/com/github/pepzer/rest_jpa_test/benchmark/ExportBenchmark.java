@@ -0,0 +1,69 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Full catalogue exports of ExportController at two table sizes, MockMvc buffers the response
+ * so the memory used by the export itself is best compared with "-prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({ "10000", "100000" })
+    int rows;
+
+    @Param({ "ndjson", "csv" })
+    String format;
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchmarkContext(rows, rows, 3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public MvcResult exportBooks() throws Exception {
+        return export("/export/books");
+    }
+
+    @Benchmark
+    public MvcResult exportAuthors() throws Exception {
+        return export("/export/authors");
+    }
+
+    private MvcResult export(String uri) throws Exception {
+        MockMvc mockMvc = bench.getMockMvc();
+        MvcResult started = mockMvc.perform(get(uri).param("format", format)).andReturn();
+        return mockMvc.perform(asyncDispatch(started)).andReturn();
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * findByLastName and the Book.authors reverse lookup with and without the indexes of the V1
+ * migration (indexed=false drops them after seeding). The second-level and query caches are
+ * off so that every call reaches the database. For the 10M rows case:
+ * ./gradlew jmh -PjmhArgs="IndexBenchmark -p rows=10000000 -jvmArgsAppend -Xmx12g"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexBenchmark {
+
+    @Param({ "1000000" })
+    int rows;
+
+    @Param({ "true", "false" })
+    boolean indexed;
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchmarkContext(rows, rows, 1, "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false");
+        if (!indexed) {
+            JdbcTemplate jdbc = bench.getContext().getBean(JdbcTemplate.class);
+            jdbc.execute("DROP INDEX ix_authors_lastname_id");
+            jdbc.execute("DROP INDEX ix_author_book_book_id");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public MvcResult findByLastName() throws Exception {
+        // Seeded last names repeat every 1000 authors
+        return bench.getMockMvc().perform(get("/authors/search/findByLastName")
+                .param("lastName", "Last" + ThreadLocalRandom.current().nextInt(1000)).param("size", "20"))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult bookAuthors() throws Exception {
+        long[] bookIds = bench.getBookIds();
+        return bench.getMockMvc()
+                .perform(get("/books/{id}/authors", bookIds[ThreadLocalRandom.current().nextInt(bookIds.length)]))
+                .andReturn();
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds benchmark.jdbc-latency-ms to every prepared statement executed, the round trip to a
+ * database server that the in-memory H2 does not have. Picked up by the component scan of the
+ * application when the benchmarks are on the classpath, only if the property is set.
+ */
+@Component
+@ConditionalOnProperty("benchmark.jdbc-latency-ms")
+public class JdbcLatency implements BeanPostProcessor {
+
+    private final long latencyMs;
+
+    public JdbcLatency(@Value("${benchmark.jdbc-latency-ms}") long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource) || latencyMs <= 0) {
+            return bean;
+        }
+        return proxy(DataSource.class, bean, (method, result) -> method.getName().equals("getConnection")
+                ? proxy(Connection.class, result, (connectionMethod, statement) -> statement instanceof PreparedStatement
+                        ? proxy(PreparedStatement.class, statement, (statementMethod, value) -> value)
+                        : statement)
+                : result);
+    }
+
+    private interface Wrapper {
+        Object wrap(Method method, Object result);
+    }
+
+    private <T> T proxy(Class<T> type, Object target, Wrapper wrapper) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (type == PreparedStatement.class && method.getName().startsWith("execute")
+                            && !method.getName().equals("executeBatch")) {
+                        TimeUnit.MILLISECONDS.sleep(latencyMs);
+                    }
+                    try {
+                        return wrapper.wrap(method, method.invoke(target, args));
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }));
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sustained load over HTTP on the embedded Tomcat: 64 clients read pages of authors and single
+ * books against the same number of servlet threads, with the handlers run on the servlet
+ * threads (jdbc.execution=blocking) or on the JDBC executor (async). jdbcLatencyMs delays each
+ * statement like a database across the network would (see {@link JdbcLatency}). The executor
+ * queue is larger than the number of clients, no request is turned away with a 503.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(64)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({ "10000" })
+    int authors;
+
+    @Param({ "10000" })
+    int books;
+
+    @Param({ "blocking", "async" })
+    String execution;
+
+    @Param({ "8" })
+    int servletThreads;
+
+    @Param({ "10" })
+    int jdbcThreads;
+
+    @Param({ "0", "2" })
+    int jdbcLatencyMs;
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchmarkContext(authors, books, 3, "server.tomcat.max-threads=" + servletThreads,
+                "jdbc.execution=" + execution, "jdbc.executor.threads=" + jdbcThreads,
+                "jdbc.executor.queue-capacity=256", "benchmark.jdbc-latency-ms=" + jdbcLatencyMs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public int getAuthors() throws IOException {
+        return bench.httpGet("/authors?size=20&page=" + ThreadLocalRandom.current().nextInt(authors / 20));
+    }
+
+    @Benchmark
+    public int getBook() throws IOException {
+        long[] ids = bench.getBookIds();
+        return bench.httpGet("/books/" + ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.pepzer.rest_jpa_test.config.MediaTypeConfiguration;
+import com.github.pepzer.rest_jpa_test.projection.AuthorView;
+import com.github.pepzer.rest_jpa_test.resource.AuthorResource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Pages of authors as HAL JSON, compact JSON (no _links) and Smile: the message converter alone
+ * on a page built in memory, with and without gzip, and the whole GET. The payload sizes of the
+ * GET, plain and gzipped, are logged once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MediaTypeBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaTypeBenchmark.class);
+
+    @Param({ "10000" })
+    int authors;
+
+    @Param({ "1000" })
+    int pageSize;
+
+    @Param({ "hal", "compact", "smile" })
+    String mediaType;
+
+    private BenchmarkContext bench;
+    private MediaType type;
+    private HttpMessageConverter<Object> converter;
+    private PagedResources<AuthorResource> page;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        bench = new BenchmarkContext(authors, authors, 3);
+        type = "smile".equals(mediaType) ? MediaTypeConfiguration.SMILE
+                : "compact".equals(mediaType) ? MediaTypeConfiguration.COMPACT_JSON : MediaTypes.HAL_JSON;
+
+        List<AuthorResource> content = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            AuthorResource author = new AuthorResource(new AuthorView((long) i, 0L, "First" + i, "Last" + i % 1000));
+            author.add(new Link("http://localhost/authors/" + i));
+            author.add(new Link("http://localhost/authors/" + i + "/books", "books"));
+            content.add(author);
+        }
+        page = new PagedResources<>(content, new PagedResources.PageMetadata(pageSize, 0, authors),
+                new Link("http://localhost/authors?page=0&size=" + pageSize));
+
+        RequestMappingHandlerAdapter adapter = bench.getContext().getBean("requestMappingHandlerAdapter",
+                RequestMappingHandlerAdapter.class);
+        converter = (HttpMessageConverter<Object>) adapter.getMessageConverters().stream()
+                .filter(candidate -> candidate.canWrite(PagedResources.class, type)).findFirst().get();
+
+        byte[] body = getAuthors().getResponse().getContentAsByteArray();
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(body);
+        }
+        LOGGER.info("GET /authors?size={} as {}: {} bytes, {} gzipped", pageSize, type, body.length, gzipped.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        out.reset();
+        write(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int serializeGzip() throws IOException {
+        out.reset();
+        try (OutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            write(gzip);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public MvcResult getAuthors() throws Exception {
+        int page = ThreadLocalRandom.current().nextInt(Math.max(1, authors / pageSize));
+        return bench.getMockMvc().perform(get("/authors").param("page", String.valueOf(page))
+                .param("size", String.valueOf(pageSize)).accept(type)).andReturn();
+    }
+
+    private void write(OutputStream body) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        converter.write(page, type, new HttpOutputMessage() {
+
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Read paths of AuthorController and BookController; SampleTime mode reports the
+ * p99 latency, run with "-prof gc" (the default of the jmh task) for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({ "10000" })
+    int authors;
+
+    @Param({ "10000" })
+    int books;
+
+    @Param({ "3" })
+    int booksPerAuthor;
+
+    @Param({ "20", "100", "500", "1000" })
+    int pageSize;
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchmarkContext(authors, books, booksPerAuthor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public MvcResult getAuthors() throws Exception {
+        return bench.getMockMvc().perform(get("/authors").param("page", randomPage(authors)).param("size",
+                String.valueOf(pageSize))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getAuthorsByName() throws Exception {
+        // Seeded last names repeat every 1000 authors
+        return bench.getMockMvc()
+                .perform(get("/authors/search/findByLastName").param("lastName", "Last" + random(1000))
+                        .param("page", "0").param("size", String.valueOf(pageSize)))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getBooks() throws Exception {
+        return bench.getMockMvc().perform(
+                get("/books").param("page", randomPage(books)).param("size", String.valueOf(pageSize))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getBooksByIsbn() throws Exception {
+        return bench.getMockMvc()
+                .perform(get("/books/search/findByIsbn").param("isbn", String.format("9%012d", random(books))))
+                .andReturn();
+    }
+
+    private String randomPage(int rows) {
+        return String.valueOf(random(Math.max(1, rows / pageSize)));
+    }
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Hot reads with and without the response cache: single authors and books, ISBN lookups and
+ * pages drawn from a working set of 'hot' ids or pages, so that the cached runs are mostly hits.
+ * With gzip the client accepts it and gets the compressed entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResponseCacheBenchmark {
+
+    @Param({ "10000" })
+    int authors;
+
+    @Param({ "10000" })
+    int books;
+
+    @Param({ "1000" })
+    int hot;
+
+    @Param({ "true", "false" })
+    boolean cache;
+
+    @Param({ "false", "true" })
+    boolean gzip;
+
+    @Param({ "20" })
+    int pageSize;
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchmarkContext(authors, books, 3, "response-cache.enabled=" + cache,
+                "response-cache.gzip=" + gzip, "response-cache.max-bytes=268435456");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public MvcResult getAuthor() throws Exception {
+        long id = bench.getAuthorIds()[random(Math.min(hot, authors))];
+        return bench.getMockMvc().perform(get("/authors/{id}", id).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getBook() throws Exception {
+        long id = bench.getBookIds()[random(Math.min(hot, books))];
+        return bench.getMockMvc().perform(get("/books/{id}", id).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getBooksByIsbn() throws Exception {
+        return bench.getMockMvc().perform(get("/books/search/findByIsbn")
+                .param("isbn", String.format("9%012d", random(Math.min(hot, books))))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getAuthors() throws Exception {
+        return bench.getMockMvc()
+                .perform(get("/authors").param("page", String.valueOf(random(Math.max(1, hot / pageSize))))
+                        .param("size", String.valueOf(pageSize)).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn();
+    }
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.pepzer.rest_jpa_test.search.TextIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * Lookups in a TextIndex of generated titles (three words out of a 20000 words vocabulary),
+ * without the database and the web layer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+
+    private static final int WORDS = 20000;
+
+    @Param({ "1000000" })
+    int titles;
+
+    private TextIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new TextIndex();
+        Random random = new Random(42);
+        for (int i = 0; i < titles; i++) {
+            index.put(i, word(random.nextInt(WORDS)) + " " + word(random.nextInt(WORDS)) + " "
+                    + word(random.nextInt(WORDS)));
+        }
+    }
+
+    @Benchmark
+    public Page<Long> wordPrefix() {
+        String word = word(ThreadLocalRandom.current().nextInt(WORDS));
+        return index.search(word.substring(0, word.length() - 1), PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Page<Long> twoWords() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.search(word(random.nextInt(WORDS)) + " " + word(random.nextInt(WORDS)).substring(0, 3),
+                PageRequest.of(0, 20));
+    }
+
+    // Distinct pronounceable words of 5 letters and more
+    private static String word(int n) {
+        StringBuilder word = new StringBuilder();
+        int rest = n;
+        do {
+            word.append("bcdfghklmnprstvz".charAt(rest % 16)).append("aeiou".charAt((rest / 16) % 5));
+            rest /= 80;
+        } while (rest > 0 || word.length() < 5);
+        return word.toString();
+    }
+}
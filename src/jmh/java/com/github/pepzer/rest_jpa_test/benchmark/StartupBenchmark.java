@@ -0,0 +1,76 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.github.pepzer.rest_jpa_test.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Cold start with and without the faststart profile: each fork is a new JVM that starts the
+ * application once (start), or starts it untimed and then serves its first GET /authors over
+ * HTTP (firstRequest), which pays for the dispatcher servlet and the beans left to be created.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Profile {
+
+        @Param({ "default", "faststart" })
+        String profile;
+
+        ConfigurableApplicationContext context;
+
+        ConfigurableApplicationContext start() {
+            context = new SpringApplicationBuilder(Application.class).profiles(profile)
+                    .properties("server.port=0", "logging.level.root=WARN",
+                            "spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1")
+                    .run();
+            return context;
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Started extends Profile {
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            start();
+        }
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext start(Profile profile) {
+        return profile.start();
+    }
+
+    @Benchmark
+    public int firstRequest(Started started) throws IOException {
+        return BenchmarkContext.httpGet(started.context, "/authors");
+    }
+}
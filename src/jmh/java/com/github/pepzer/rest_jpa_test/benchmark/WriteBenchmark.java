@@ -0,0 +1,94 @@
+package com.github.pepzer.rest_jpa_test.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Write paths: AuthorController.createAuthor, AuthorController.addAuthorBook and a POST /bulk
+ * of bulkAuthors authors, each with a book and a link.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({ "10000" })
+    int authors;
+
+    @Param({ "10000" })
+    int books;
+
+    @Param({ "3" })
+    int booksPerAuthor;
+
+    @Param({ "1000" })
+    int bulkAuthors;
+
+    private final AtomicLong bulkRuns = new AtomicLong();
+
+    private BenchmarkContext bench;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchmarkContext(authors, books, booksPerAuthor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public MvcResult createAuthor() throws Exception {
+        return bench.getMockMvc().perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .content("{\"firstName\": \"Bilbo\", \"lastName\":\"Baggins\"}")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult addAuthorBook() throws Exception {
+        long[] authorIds = bench.getAuthorIds();
+        long[] bookIds = bench.getBookIds();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return bench.getMockMvc().perform(put("/authors/{author-id}/books/{book-id}",
+                authorIds[random.nextInt(authorIds.length)], bookIds[random.nextInt(bookIds.length)])).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult bulkImport() throws Exception {
+        long run = bulkRuns.incrementAndGet();
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < bulkAuthors; i++) {
+            String isbn = String.format("7%06d%06d", run, i);
+            lines.append("{\"type\":\"author\",\"ref\":\"a").append(i)
+                    .append("\",\"firstName\":\"Bulk\",\"lastName\":\"Author\"}\n");
+            lines.append("{\"type\":\"book\",\"isbn\":\"").append(isbn).append("\",\"title\":\"Bulk\"}\n");
+            lines.append("{\"type\":\"link\",\"author\":\"a").append(i).append("\",\"isbn\":\"").append(isbn)
+                    .append("\"}\n");
+        }
+        return bench.getMockMvc().perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson")
+                .content(lines.toString())).andReturn();
+    }
+}
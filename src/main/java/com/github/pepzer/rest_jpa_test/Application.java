@@ -7,33 +7,40 @@ import com.github.pepzer.rest_jpa_test.repository.BookRepository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
-public class Application implements CommandLineRunner {
+public class Application {
+	private static final String SAMPLE_ISBN = "0123401234012";
+
 	@SuppressWarnings("unused")
 	private static final Logger LOGGER = LoggerFactory.getLogger(Application.class);
 
-	@Autowired
-	AuthorRepository authorRepository;
-
-	@Autowired
-	BookRepository bookRepository;
-
 	public static void main(String[] args) throws Exception {
 		LOGGER.info("Running Application...");
 		SpringApplication.run(Application.class, args);
 	}
 
-	@Override
-	public void run(String... args) {
-		Author author = new Author("Bilbo", "Baggins");
-		Book book = new Book("0123401234012", "The Hobbit");
-		author.getBooks().add(book);
-		book.getAuthors().add(author);
-		authorRepository.save(author);
+	/**
+	 * Saves a sample author and book on start unless the book is already there (a file or server
+	 * database keeps it across restarts), or app.seed=false.
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "app.seed", havingValue = "true", matchIfMissing = true)
+	CommandLineRunner seed(AuthorRepository authorRepository, BookRepository bookRepository) {
+		return args -> {
+			if (bookRepository.findByIsbn(SAMPLE_ISBN).isPresent()) {
+				return;
+			}
+			Author author = new Author("Bilbo", "Baggins");
+			Book book = new Book(SAMPLE_ISBN, "The Hobbit");
+			author.getBooks().add(book);
+			book.getAuthors().add(author);
+			authorRepository.save(author);
+		};
 	}
 }
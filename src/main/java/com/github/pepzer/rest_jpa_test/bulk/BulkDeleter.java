@@ -0,0 +1,228 @@
+package com.github.pepzer.rest_jpa_test.bulk;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import com.github.pepzer.rest_jpa_test.cache.ResponseCache;
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.search.CatalogueSearchIndex;
+
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Deletes authors or books, picked by id or by a filter, with set-based statements in a single
+ * transaction: their author_book rows first, then the rows themselves, {@link #CHUNK_SIZE} ids per
+ * statement. No entity is loaded. Deleting books changes the books of their authors, whose version
+ * is incremented as when a link is added.
+ * <p>
+ * The statements run on the connection of the session, behind Hibernate's back: the cached
+ * entities and collections on both sides of the removed links are evicted here, the cached queries
+ * on the three tables are invalidated, and the search index and the cached responses are updated
+ * once the transaction has committed.
+ */
+@Component
+public class BulkDeleter {
+
+    public static final int CHUNK_SIZE = 1000;
+
+    private static final String AUTHOR_BOOKS = Author.class.getName() + ".books";
+    private static final String BOOK_AUTHORS = Book.class.getName() + ".authors";
+    private static final String[] SPACES = { "authors", "books", "author_book" };
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+    private final CatalogueSearchIndex searchIndex;
+    private final ResponseCache responseCache;
+
+    public BulkDeleter(TransactionTemplate transactionTemplate, CatalogueSearchIndex searchIndex,
+            ResponseCache responseCache) {
+        this.transactionTemplate = transactionTemplate;
+        this.searchIndex = searchIndex;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * @return the number of authors deleted, unknown ids are ignored
+     */
+    public int deleteAuthors(Collection<Long> ids) {
+        return transactionTemplate.execute(status -> deleteAuthors(new ArrayList<>(new LinkedHashSet<>(ids))));
+    }
+
+    /**
+     * @param filter the authors to delete, all of them if null
+     * @return the number of authors deleted
+     */
+    public int deleteAuthors(Specification<Author> filter) {
+        return transactionTemplate.execute(status -> deleteAuthors(select(Author.class, filter)));
+    }
+
+    /**
+     * @return the number of books deleted, unknown ids are ignored
+     */
+    public int deleteBooks(Collection<Long> ids) {
+        return transactionTemplate.execute(status -> deleteBooks(new ArrayList<>(new LinkedHashSet<>(ids))));
+    }
+
+    /**
+     * @param filter the books to delete, all of them if null
+     * @return the number of books deleted
+     */
+    public int deleteBooks(Specification<Book> filter) {
+        return transactionTemplate.execute(status -> deleteBooks(select(Book.class, filter)));
+    }
+
+    private int deleteAuthors(List<Long> ids) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        int deleted = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            Set<Long> books = new LinkedHashSet<>();
+            deleted += session.doReturningWork(connection -> {
+                books.addAll(selectIds(connection, "SELECT DISTINCT book_id FROM author_book WHERE author_id", chunk));
+                update(connection, "DELETE FROM author_book WHERE author_id", chunk);
+                return update(connection, "DELETE FROM authors WHERE id", chunk);
+            });
+            evict(session, () -> {
+                org.hibernate.Cache cache = session.getFactory().getCache();
+                for (Long id : chunk) {
+                    cache.evictEntity(Author.class, id);
+                    cache.evictCollection(AUTHOR_BOOKS, id);
+                }
+                books.forEach(id -> cache.evictCollection(BOOK_AUTHORS, id));
+            }, () -> {
+                searchIndex.removeAuthors(chunk);
+                responseCache.invalidate(chunk, books);
+            });
+        }
+        return deleted;
+    }
+
+    private int deleteBooks(List<Long> ids) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        int deleted = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            Set<Long> authors = new LinkedHashSet<>();
+            deleted += session.doReturningWork(connection -> {
+                authors.addAll(selectIds(connection, "SELECT DISTINCT author_id FROM author_book WHERE book_id", chunk));
+                for (List<Long> authorChunk : chunks(new ArrayList<>(authors))) {
+                    update(connection, "UPDATE authors SET version = version + 1 WHERE id", authorChunk);
+                }
+                update(connection, "DELETE FROM author_book WHERE book_id", chunk);
+                return update(connection, "DELETE FROM books WHERE id", chunk);
+            });
+            evict(session, () -> {
+                org.hibernate.Cache cache = session.getFactory().getCache();
+                for (Long id : chunk) {
+                    cache.evictEntity(Book.class, id);
+                    cache.evictCollection(BOOK_AUTHORS, id);
+                }
+                for (Long id : authors) {
+                    cache.evictEntity(Author.class, id);
+                    cache.evictCollection(AUTHOR_BOOKS, id);
+                }
+            }, () -> {
+                searchIndex.removeBooks(chunk);
+                responseCache.invalidate(authors, chunk);
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * The ids of the entities matching the filter, with a scalar query.
+     */
+    private <T> List<Long> select(Class<T> type, Specification<T> filter) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<T> root = query.from(type);
+        query.select(root.get("id"));
+        Predicate predicate = filter == null ? null : filter.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    private static Set<Long> selectIds(Connection connection, String sql, List<Long> ids) throws SQLException {
+        Set<Long> result = new LinkedHashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql + in(ids.size()))) {
+            bind(statement, ids);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    result.add(rows.getLong(1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int update(Connection connection, String sql, List<Long> ids) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql + in(ids.size()))) {
+            bind(statement, ids);
+            return statement.executeUpdate();
+        }
+    }
+
+    private static String in(int count) {
+        return " IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+
+    private static void bind(PreparedStatement statement, List<Long> ids) throws SQLException {
+        int index = 1;
+        for (Long id : ids) {
+            statement.setLong(index++, id);
+        }
+    }
+
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            chunks.add(ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Evicts once now and again after the transaction completes, so a concurrent reader cannot put
+     * back the deleted state, and applies the committed change to the search index and the cached
+     * responses.
+     */
+    private static void evict(SessionImplementor session, Runnable eviction, Runnable afterCommit) {
+        eviction.run();
+        UpdateTimestampsCache timestamps = session.getFactory().getCache().getUpdateTimestampsCache();
+        if (timestamps != null) {
+            timestamps.preInvalidate(SPACES, session);
+        }
+        session.getActionQueue().registerProcess((success, completed) -> {
+            eviction.run();
+            if (timestamps != null) {
+                timestamps.invalidate(SPACES, completed);
+            }
+            if (success) {
+                afterCommit.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.pepzer.rest_jpa_test.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Imports NDJSON lines (see {@link BulkLine}) as they are read: the lines are parsed one at a
+ * time and written in chunks of bulk.chunk-size lines, each in its own transaction, so the
+ * inserts go out in JDBC batches and a failed chunk does not undo the previous ones. A line
+ * that can't be parsed or written is skipped and reported, the rest of its chunk is kept.
+ */
+@Component
+public class BulkImporter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final BookRepository bookRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectReader lineReader;
+    private final int chunkSize;
+
+    public BulkImporter(BookRepository bookRepository, TransactionTemplate transactionTemplate, Validator validator,
+            ObjectMapper objectMapper, @Value("${bulk.chunk-size:500}") int chunkSize) {
+        this.bookRepository = bookRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.lineReader = objectMapper.readerFor(BulkLine.class);
+        this.chunkSize = chunkSize;
+    }
+
+    public BulkReport importLines(BufferedReader reader) throws IOException {
+        BulkReport report = new BulkReport();
+        Map<String, Long> authorRefs = new HashMap<>();
+        List<BulkLine> chunk = new ArrayList<>(chunkSize);
+
+        int number = 0;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            number++;
+            if (text.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                BulkLine line = lineReader.readValue(text);
+                line.number = number;
+                chunk.add(line);
+            } catch (JsonProcessingException e) {
+                report.error(number, "Malformed line: " + e.getOriginalMessage());
+                continue;
+            }
+            if (chunk.size() == chunkSize) {
+                writeChunk(chunk, authorRefs, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(chunk, authorRefs, report);
+        }
+
+        report.setLines(number);
+        report.getErrors().sort(Comparator.comparingInt(BulkReport.LineError::getLine));
+        return report;
+    }
+
+    private void writeChunk(List<BulkLine> lines, Map<String, Long> authorRefs, BulkReport report) {
+        Chunk chunk = new Chunk();
+        try {
+            transactionTemplate.execute(status -> {
+                write(lines, authorRefs, chunk);
+                entityManager.flush();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            String message = "Not imported, chunk rolled back: "
+                    + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            for (BulkLine line : lines) {
+                if (!chunk.failed.contains(line.number)) {
+                    report.error(line.number, message);
+                }
+            }
+            chunk.errors.forEach(error -> report.error(error.getLine(), error.getMessage()));
+            return;
+        } finally {
+            // With open-in-view the chunks share the EntityManager of the request, the entities of
+            // the previous chunks would stay managed and be dirty-checked by every later flush
+            entityManager.clear();
+        }
+
+        chunk.authors.forEach((ref, author) -> authorRefs.put(ref, author.getId()));
+        report.add(chunk.authorCount, chunk.bookCount, chunk.linkCount);
+        chunk.errors.forEach(error -> report.error(error.getLine(), error.getMessage()));
+    }
+
+    private void write(List<BulkLine> lines, Map<String, Long> authorRefs, Chunk chunk) {
+        // The books of the chunk and the ones its links point to, loaded with a single query
+        Set<String> isbns = new HashSet<>();
+        for (BulkLine line : lines) {
+            if (line.getIsbn() != null) {
+                isbns.add(line.getIsbn());
+            }
+        }
+        Map<String, Book> books = new HashMap<>();
+        if (!isbns.isEmpty()) {
+            bookRepository.findByIsbnIn(isbns).forEach(book -> books.put(book.getISBN(), book));
+        }
+
+        for (BulkLine line : lines) {
+            String type = line.getType() == null ? "" : line.getType();
+            switch (type) {
+            case BulkLine.AUTHOR:
+                writeAuthor(line, authorRefs, chunk);
+                break;
+            case BulkLine.BOOK:
+                writeBook(line, books, chunk);
+                break;
+            case BulkLine.LINK:
+                writeLink(line, books, authorRefs, chunk);
+                break;
+            default:
+                chunk.error(line.number, "Unknown type '" + type + "', expected author, book or link");
+            }
+        }
+    }
+
+    private void writeAuthor(BulkLine line, Map<String, Long> authorRefs, Chunk chunk) {
+        String ref = line.getRef();
+        if (ref != null && (authorRefs.containsKey(ref) || chunk.authors.containsKey(ref))) {
+            chunk.error(line.number, "Duplicate author ref '" + ref + "'");
+            return;
+        }
+        Author author = new Author(line.getFirstName(), line.getLastName());
+        if (!valid(line, author, chunk)) {
+            return;
+        }
+        entityManager.persist(author);
+        if (ref != null) {
+            chunk.authors.put(ref, author);
+        }
+        chunk.authorCount++;
+    }
+
+    private void writeBook(BulkLine line, Map<String, Book> books, Chunk chunk) {
+        if (books.containsKey(line.getIsbn())) {
+            chunk.error(line.number, "A book with ISBN " + line.getIsbn() + " already exists");
+            return;
+        }
+        Book book = new Book(line.getIsbn(), line.getTitle());
+        if (!valid(line, book, chunk)) {
+            return;
+        }
+        entityManager.persist(book);
+        books.put(book.getISBN(), book);
+        chunk.bookCount++;
+    }
+
+    private void writeLink(BulkLine line, Map<String, Book> books, Map<String, Long> authorRefs, Chunk chunk) {
+        Author author;
+        if (line.getAuthor() != null) {
+            author = chunk.authors.get(line.getAuthor());
+            if (author == null && authorRefs.containsKey(line.getAuthor())) {
+                author = entityManager.find(Author.class, authorRefs.get(line.getAuthor()));
+            }
+        } else if (line.getAuthorId() != null) {
+            author = entityManager.find(Author.class, line.getAuthorId());
+        } else {
+            chunk.error(line.number, "A link needs an author ref or an authorId");
+            return;
+        }
+        if (author == null) {
+            chunk.error(line.number, "Unknown author " + (line.getAuthor() != null ? "ref '" + line.getAuthor() + "'"
+                    : "id " + line.getAuthorId()));
+            return;
+        }
+        Book book = books.get(line.getIsbn());
+        if (book == null) {
+            chunk.error(line.number, "Unknown book ISBN " + line.getIsbn());
+            return;
+        }
+        if (author.getBooks().add(book)) {
+            chunk.linkCount++;
+        }
+    }
+
+    private boolean valid(BulkLine line, Object entity, Chunk chunk) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(entity);
+        if (!violations.isEmpty()) {
+            chunk.error(line.number, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage()).sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+        return violations.isEmpty();
+    }
+
+    /**
+     * What a chunk wrote, applied to the report only once its transaction has committed.
+     */
+    private static class Chunk {
+        final Map<String, Author> authors = new HashMap<>();
+        final List<BulkReport.LineError> errors = new ArrayList<>();
+        final Set<Integer> failed = new HashSet<>();
+        int authorCount;
+        int bookCount;
+        int linkCount;
+
+        void error(int number, String message) {
+            if (failed.add(number)) {
+                errors.add(new BulkReport.LineError(number, message));
+            }
+        }
+    }
+}
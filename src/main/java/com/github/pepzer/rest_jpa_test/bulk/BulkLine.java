@@ -0,0 +1,91 @@
+package com.github.pepzer.rest_jpa_test.bulk;
+
+/**
+ * One line of a bulk import, depending on the type:
+ * <ul>
+ * <li>author: firstName, lastName and an optional ref used by the links of the same import</li>
+ * <li>book: isbn, title</li>
+ * <li>link: the author (a ref) or authorId, and the isbn of the book</li>
+ * </ul>
+ */
+public class BulkLine {
+    public static final String AUTHOR = "author";
+    public static final String BOOK = "book";
+    public static final String LINK = "link";
+
+    // Position in the input, not part of the JSON
+    int number;
+
+    private String type;
+    private String ref;
+    private String firstName;
+    private String lastName;
+    private String isbn;
+    private String title;
+    private String author;
+    private Long authorId;
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    public void setRef(String ref) {
+        this.ref = ref;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public void setIsbn(String isbn) {
+        this.isbn = isbn;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(Long authorId) {
+        this.authorId = authorId;
+    }
+}
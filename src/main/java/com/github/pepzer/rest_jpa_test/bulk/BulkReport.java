@@ -0,0 +1,68 @@
+package com.github.pepzer.rest_jpa_test.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: the number of lines read, of the rows created and an error for
+ * each line that was skipped.
+ */
+public class BulkReport {
+    private int lines;
+    private int authors;
+    private int books;
+    private int links;
+    private final List<LineError> errors = new ArrayList<>();
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getAuthors() {
+        return authors;
+    }
+
+    public int getBooks() {
+        return books;
+    }
+
+    public int getLinks() {
+        return links;
+    }
+
+    public List<LineError> getErrors() {
+        return errors;
+    }
+
+    void setLines(int lines) {
+        this.lines = lines;
+    }
+
+    void add(int authors, int books, int links) {
+        this.authors += authors;
+        this.books += books;
+        this.links += links;
+    }
+
+    void error(int line, String message) {
+        errors.add(new LineError(line, message));
+    }
+
+    public static class LineError {
+        private final int line;
+        private final String message;
+
+        LineError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.github.pepzer.rest_jpa_test.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.HttpServletRequest;
+
+import com.github.pepzer.rest_jpa_test.config.InverseCollectionCacheInvalidator;
+import com.github.pepzer.rest_jpa_test.config.MediaTypeConfiguration;
+import com.github.pepzer.rest_jpa_test.config.ReplicaRoutingDataSource;
+import com.github.pepzer.rest_jpa_test.controller.ETags;
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * The serialized HAL JSON of hot GET responses, keyed by their content type, the base URL of their
+ * links and the path and query of the request (the parameters in a canonical order), and answered
+ * with the cached bytes without running the handler: no query, no resource, no Jackson. Only 200 responses are kept, with their entity tag, optionally gzip-compressed.
+ * <p>
+ * A handler declares what the response depends on: the authors and books it shows, and for a
+ * page any author or any book. An entry is dropped once a transaction that inserts, updates or
+ * deletes one of them (through Hibernate, or through the bulk statements that report it) has
+ * committed; an entry computed while such a change was applied, or read from a replica that is
+ * behind the primary, is not kept. The entries are bounded by their total size, the least recently
+ * used are evicted first (second chance).
+ */
+@Component
+public class ResponseCache implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener {
+
+    private static final long serialVersionUID = 1L;
+    private static final String ALL_AUTHORS = "authors";
+    private static final String ALL_BOOKS = "books";
+    private static final String PAGE = "page";
+    private static final String SIZE = "size";
+    private static final String SORT = "sort";
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+    // Key, object headers and references, an estimate
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectProvider<RequestMappingHandlerAdapter> handlerAdapter;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean gzip;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Guarded by this
+    private final LinkedHashSet<Entry> clock = new LinkedHashSet<>();
+    private final Map<String, Set<Entry>> byTag = new HashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    public ResponseCache(EntityManagerFactory entityManagerFactory,
+            @Qualifier("requestMappingHandlerAdapter") ObjectProvider<RequestMappingHandlerAdapter> handlerAdapter,
+            MeterRegistry registry,
+            @Value("${response-cache.enabled:true}") boolean enabled,
+            @Value("${response-cache.max-bytes:16777216}") long maxBytes,
+            @Value("${response-cache.max-entry-bytes:262144}") long maxEntryBytes,
+            @Value("${response-cache.gzip:false}") boolean gzip) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.handlerAdapter = handlerAdapter;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.gzip = gzip;
+
+        hits = Counter.builder("response.cache.requests").tag("result", "hit").register(registry);
+        misses = Counter.builder("response.cache.requests").tag("result", "miss").register(registry);
+        evictions = Counter.builder("response.cache.removals").tag("cause", "size").register(registry);
+        invalidations = Counter.builder("response.cache.removals").tag("cause", "invalidation").register(registry);
+        Gauge.builder("response.cache.size", bytes, AtomicLong::get).baseUnit("bytes").register(registry);
+        Gauge.builder("response.cache.entries", entries, Map::size).register(registry);
+    }
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+    }
+
+    /**
+     * The cached response to the current request, or the one of the handler, cached if it is a 200.
+     * Requests that do not accept JSON always go to the handler.
+     */
+    public HttpEntity<?> get(Function<Dependencies, ? extends HttpEntity<?>> handler) {
+        return get(null, handler);
+    }
+
+    /**
+     * As {@link #get(Function)} for a page: the requests of the same page share the entry whether
+     * they give page, size and sort or leave the defaults.
+     */
+    public HttpEntity<?> get(Pageable pageable, Function<Dependencies, ? extends HttpEntity<?>> handler) {
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                .getRequest();
+        MediaType contentType = enabled
+                ? MediaTypeConfiguration.negotiate(request.getHeader(HttpHeaders.ACCEPT)) : null;
+        if (contentType == null) {
+            return handler.apply(new Dependencies());
+        }
+
+        String key = key(request, contentType, pageable);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.referenced = true;
+            hits.increment();
+            return respond(entry, request, contentType);
+        }
+
+        misses.increment();
+        long start = generation.get();
+        Dependencies dependencies = new Dependencies();
+        HttpEntity<?> response = handler.apply(dependencies);
+        if (!(response instanceof ResponseEntity) || ((ResponseEntity<?>) response).getStatusCode() != HttpStatus.OK
+                || response.getBody() == null) {
+            return response;
+        }
+        byte[] body = serialize(response.getBody(), contentType);
+        if (body == null) {
+            return response;
+        }
+        entry = new Entry(key, gzip ? compress(body) : body, gzip, response.getHeaders().getETag(),
+                dependencies.tags);
+        if (entry.weight <= maxEntryBytes && request.getAttribute(ReplicaRoutingDataSource.STALE_READ) == null) {
+            put(entry, start);
+        }
+        return respond(entry, request, contentType);
+    }
+
+    /**
+     * Drops the responses that show these authors or books, and the pages of authors or books. The
+     * caller applies it once the change has committed.
+     */
+    public void invalidate(Collection<Long> authorIds, Collection<Long> bookIds) {
+        Set<String> tags = new HashSet<>();
+        if (!authorIds.isEmpty()) {
+            tags.add(ALL_AUTHORS);
+            authorIds.forEach(id -> tags.add(author(id)));
+        }
+        if (!bookIds.isEmpty()) {
+            tags.add(ALL_BOOKS);
+            bookIds.forEach(id -> tags.add(book(id)));
+        }
+        if (!tags.isEmpty()) {
+            invalidate(tags);
+        }
+    }
+
+    /**
+     * Counts the committed changes to the authors and books, see {@link SingleFlightLookups}.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    private synchronized void put(Entry entry, long start) {
+        if (generation.get() != start) {
+            return;
+        }
+        Entry previous = entries.put(entry.key, entry);
+        if (previous != null) {
+            unlink(previous);
+        }
+        clock.add(entry);
+        entry.tags.forEach(tag -> byTag.computeIfAbsent(tag, key -> new HashSet<>()).add(entry));
+        bytes.addAndGet(entry.weight);
+
+        while (bytes.get() > maxBytes) {
+            Entry candidate = clock.iterator().next();
+            clock.remove(candidate);
+            if (candidate.referenced && candidate != entry) {
+                // Second chance, read since the hand last passed
+                candidate.referenced = false;
+                clock.add(candidate);
+                continue;
+            }
+            entries.remove(candidate.key, candidate);
+            untag(candidate);
+            bytes.addAndGet(-candidate.weight);
+            evictions.increment();
+        }
+    }
+
+    private synchronized void invalidate(Set<String> tags) {
+        generation.incrementAndGet();
+        for (String tag : tags) {
+            Set<Entry> tagged = byTag.remove(tag);
+            if (tagged == null) {
+                continue;
+            }
+            for (Entry entry : tagged) {
+                if (entries.remove(entry.key, entry)) {
+                    unlink(entry);
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    private void unlink(Entry entry) {
+        clock.remove(entry);
+        untag(entry);
+        bytes.addAndGet(-entry.weight);
+    }
+
+    private void untag(Entry entry) {
+        for (String tag : entry.tags) {
+            Set<Entry> tagged = byTag.get(tag);
+            if (tagged != null && tagged.remove(entry) && tagged.isEmpty()) {
+                byTag.remove(tag);
+            }
+        }
+    }
+
+    /**
+     * The body as written by the first message converter of Spring MVC that can write it, null if
+     * that fails (the converters then report it as usual).
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(Object body, MediaType contentType) {
+        for (HttpMessageConverter<?> converter : handlerAdapter.getObject().getMessageConverters()) {
+            if (converter.canWrite(body.getClass(), contentType)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+                HttpHeaders headers = new HttpHeaders();
+                try {
+                    ((HttpMessageConverter<Object>) converter).write(body, contentType, new HttpOutputMessage() {
+
+                        @Override
+                        public OutputStream getBody() {
+                            return out;
+                        }
+
+                        @Override
+                        public HttpHeaders getHeaders() {
+                            return headers;
+                        }
+                    });
+                } catch (IOException | HttpMessageNotWritableException e) {
+                    return null;
+                }
+                return out.toByteArray();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The content type, the base URL the links are built from, the path and the query parameters
+     * sorted by name; the page, size and sort of a page are those of the resolved Pageable.
+     */
+    private static String key(HttpServletRequest request, MediaType contentType, Pageable pageable) {
+        Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+        if (pageable != null) {
+            parameters.remove(PAGE);
+            parameters.remove(SIZE);
+            parameters.remove(SORT);
+            parameters.put(PAGE, new String[] { String.valueOf(pageable.getPageNumber()) });
+            parameters.put(SIZE, new String[] { String.valueOf(pageable.getPageSize()) });
+            parameters.put(SORT, new String[] { pageable.getSort().toString() });
+        }
+        StringBuilder key = new StringBuilder().append(contentType).append(' ')
+                .append(ServletUriComponentsBuilder.fromContextPath(request).toUriString())
+                .append(URL_PATH_HELPER.getPathWithinApplication(request));
+        char separator = '?';
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            for (String value : parameter.getValue()) {
+                key.append(separator).append(parameter.getKey()).append('=').append(value);
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    private ResponseEntity<byte[]> respond(Entry entry, HttpServletRequest request, MediaType contentType) {
+        if (entry.etag != null && ETags.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), entry.etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entry.etag).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(contentType);
+        if (entry.etag != null) {
+            response.eTag(entry.etag);
+        }
+        if (!entry.gzipped) {
+            return response.body(entry.body);
+        }
+        response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(request)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.body);
+        }
+        return response.body(decompress(entry.body));
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        for (String coding : StringUtils.commaDelimitedListToStringArray(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            String[] parts = coding.trim().split("\\s*;\\s*");
+            if (parts[0].equalsIgnoreCase("gzip") || parts[0].equals("*")) {
+                return parts.length == 1 || !parts[1].matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static byte[] compress(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] body) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return StreamUtils.copyToByteArray(gzip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event, event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event, event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event, event.getEntity());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // Still abstract in Hibernate 5.2, which only calls the method above
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        Object owner = event.getAffectedOwnerOrNull();
+        if (owner instanceof Author && ((Author) owner).getBooks() == event.getCollection()) {
+            Set<Long> books = InverseCollectionCacheInvalidator.changedBooks(event.getCollection());
+            afterCommit(event, Collections.singleton(((Author) owner).getId()), books);
+        }
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        Object owner = event.getAffectedOwnerOrNull();
+        if (owner instanceof Author && ((Author) owner).getBooks() == event.getCollection()) {
+            Set<Long> books = InverseCollectionCacheInvalidator.changedBooks(event.getCollection());
+            afterCommit(event, Collections.singleton(((Author) owner).getId()), books);
+        }
+    }
+
+    private void changed(AbstractEvent event, Object entity) {
+        if (entity instanceof Author) {
+            afterCommit(event, Collections.singleton(((Author) entity).getId()), Collections.emptySet());
+        } else if (entity instanceof Book) {
+            afterCommit(event, Collections.emptySet(), Collections.singleton(((Book) entity).getId()));
+        }
+    }
+
+    private void afterCommit(AbstractEvent event, Collection<Long> authorIds, Collection<Long> bookIds) {
+        event.getSession().getActionQueue().registerProcess((success, session) -> {
+            if (success) {
+                invalidate(authorIds, bookIds);
+            }
+        });
+    }
+
+    private static String author(Long id) {
+        return "author:" + id;
+    }
+
+    private static String book(Long id) {
+        return "book:" + id;
+    }
+
+    /**
+     * What a response shows, filled by its handler.
+     */
+    public static class Dependencies {
+
+        private final Set<String> tags = new HashSet<>();
+
+        public Dependencies author(Long id) {
+            tags.add(ResponseCache.author(id));
+            return this;
+        }
+
+        public Dependencies book(Long id) {
+            tags.add(ResponseCache.book(id));
+            return this;
+        }
+
+        /**
+         * Any author, inserted ones included, as for a page.
+         */
+        public Dependencies authors() {
+            tags.add(ALL_AUTHORS);
+            return this;
+        }
+
+        public Dependencies books() {
+            tags.add(ALL_BOOKS);
+            return this;
+        }
+    }
+
+    private static final class Entry {
+
+        final String key;
+        final byte[] body;
+        final boolean gzipped;
+        final String etag;
+        final Set<String> tags;
+        final long weight;
+        volatile boolean referenced;
+
+        Entry(String key, byte[] body, boolean gzipped, String etag, Set<String> tags) {
+            this.key = key;
+            this.body = body;
+            this.gzipped = gzipped;
+            this.etag = etag;
+            this.tags = tags;
+            this.weight = body.length + 2L * key.length() + ENTRY_OVERHEAD;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.pepzer.rest_jpa_test.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a repository lookup whose concurrent identical calls (equal arguments) share a single
+ * execution, its result or its exception, see {@link SingleFlightLookups}. The result is handed to
+ * several threads: projections only, not entities, which belong to the persistence context that
+ * loaded them.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SingleFlight {
+}
@@ -0,0 +1,123 @@
+package com.github.pepzer.rest_jpa_test.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Coalesces the concurrent calls of a {@link SingleFlight} lookup: the first caller runs the query,
+ * the callers with the same arguments that arrive meanwhile wait for it (at most
+ * single-flight.max-wait-ms, then they run the query themselves) and get its result, or its
+ * exception. Nothing is kept once the query has returned.
+ * <p>
+ * A caller does not join a query started before a change to the authors or books committed, it
+ * may have made that change. Calls within a transaction always run on their own, they may read
+ * what the transaction wrote.
+ */
+@Aspect
+@Component
+public class SingleFlightLookups {
+
+    private final ResponseCache responseCache;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final long maxWaitMs;
+
+    private final Map<List<Object>, Flight> flights = new ConcurrentHashMap<>();
+
+    public SingleFlightLookups(ResponseCache responseCache, MeterRegistry registry,
+            @Value("${single-flight.enabled:true}") boolean enabled,
+            @Value("${single-flight.max-wait-ms:1000}") long maxWaitMs) {
+        this.responseCache = responseCache;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    @Around("@annotation(com.github.pepzer.rest_jpa_test.cache.SingleFlight)")
+    public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        List<Object> key = new ArrayList<>(joinPoint.getArgs().length + 1);
+        key.add(((MethodSignature) joinPoint.getSignature()).getMethod());
+        key.addAll(Arrays.asList(joinPoint.getArgs()));
+
+        Flight flight = new Flight(responseCache.generation());
+        Flight current = flights.putIfAbsent(key, flight);
+        if (current == null) {
+            return lead(joinPoint, key, flight);
+        }
+        if (current.generation != flight.generation) {
+            count(joinPoint, "alone");
+            return joinPoint.proceed();
+        }
+        return follow(joinPoint, current);
+    }
+
+    private Object lead(ProceedingJoinPoint joinPoint, List<Object> key, Flight flight) throws Throwable {
+        count(joinPoint, "leader");
+        try {
+            Object result = joinPoint.proceed();
+            flight.result.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private Object follow(ProceedingJoinPoint joinPoint, Flight flight) throws Throwable {
+        try {
+            Object result = flight.result.get(maxWaitMs, TimeUnit.MILLISECONDS);
+            count(joinPoint, "shared");
+            return result;
+        } catch (ExecutionException e) {
+            count(joinPoint, "shared");
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            count(joinPoint, "timeout");
+            return joinPoint.proceed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            count(joinPoint, "alone");
+            return joinPoint.proceed();
+        }
+    }
+
+    private void count(ProceedingJoinPoint joinPoint, String result) {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Counter.builder("repository.single.flight")
+                .tags("repository", signature.getDeclaringType().getSimpleName(), "method", signature.getName(),
+                        "result", result)
+                .register(registry).increment();
+    }
+
+    private static final class Flight {
+
+        final long generation;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Flight(long generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a controller whose GET handlers wait on JDBC. With jdbc.execution=async they run on the
+ * bounded JDBC executor and the servlet thread is released meanwhile, see
+ * {@link JdbcExecutionConfiguration}.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BlockingJdbc {
+}
@@ -0,0 +1,163 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.h2.tools.Server;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.AbstractDependsOnBeanFactoryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Applies the {@link DatabaseProperties} to the Hikari pool and its H2 URL before the pool is
+ * started, and sets the JDBC fetch sizes: database.fetch-size.default-size for every query,
+ * database.fetch-size.queries for the statements of single repository methods (see
+ * {@link RepositoryFetchSize}). With database.replica.count the read-only transactions go to the
+ * replicas of the {@link ReplicationStandIn}. {@link DatabaseSelfCheck} logs what is in effect.
+ */
+@Configuration
+@EnableConfigurationProperties(DatabaseProperties.class)
+public class DatabaseConfiguration {
+
+    static final String H2_SERVER = "h2Server";
+
+    static final String REPLICATION = "replicationStandIn";
+
+    @Bean
+    public static BeanPostProcessor tunedDataSource(ObjectProvider<DatabaseProperties> properties,
+            ObjectProvider<ReplicationStandIn> replication) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource) {
+                    configure((HikariDataSource) bean, properties.getObject());
+                }
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource)) {
+                    return bean;
+                }
+                DataSource dataSource = (DataSource) bean;
+                Map<String, Integer> queries = properties.getObject().getFetchSize().getQueries();
+                if (!queries.isEmpty()) {
+                    dataSource = ProxyDataSourceBuilder.create(dataSource).name(beanName)
+                            .listener(new RepositoryFetchSize(queries)).build();
+                }
+                ReplicationStandIn replicas = replication.getIfAvailable();
+                if (replicas == null) {
+                    return dataSource;
+                }
+                try {
+                    return replicas.route(dataSource, beanName);
+                } catch (SQLException e) {
+                    throw new BeanCreationException(beanName, "Cannot copy the database to the replicas", e);
+                }
+            }
+        };
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer defaultFetchSize(DatabaseProperties properties) {
+        return hibernate -> {
+            int fetchSize = properties.getFetchSize().getDefaultSize();
+            if (fetchSize > 0) {
+                hibernate.put(AvailableSettings.STATEMENT_FETCH_SIZE, fetchSize);
+            }
+        };
+    }
+
+    @Bean
+    public RepositoryFetchSize.Tracker repositoryFetchSizeTracker() {
+        return new RepositoryFetchSize.Tracker();
+    }
+
+    private static void configure(HikariDataSource dataSource, DatabaseProperties properties) {
+        DatabaseProperties.Pool pool = properties.getPool();
+        dataSource.setMaximumPoolSize(pool.getMaximumSize());
+        dataSource.setMinimumIdle(pool.getMinimumIdle() != null ? pool.getMinimumIdle() : pool.getMaximumSize());
+        dataSource.setConnectionTimeout(pool.getConnectionTimeout().toMillis());
+        dataSource.setIdleTimeout(pool.getIdleTimeout().toMillis());
+        dataSource.setMaxLifetime(pool.getMaxLifetime().toMillis());
+
+        DatabaseProperties.H2 h2 = properties.getH2();
+        StringBuilder url = new StringBuilder();
+        switch (h2.getMode()) {
+        case FILE:
+            url.append("jdbc:h2:file:").append(h2.getDirectory()).append('/').append(h2.getName())
+                    .append(";DB_CLOSE_ON_EXIT=FALSE");
+            break;
+        case SERVER:
+            url.append("jdbc:h2:tcp://localhost:").append(h2.getPort()).append("/./").append(h2.getName());
+            break;
+        default:
+            url.append(dataSource.getJdbcUrl());
+        }
+        if (!url.toString().startsWith("jdbc:h2:")) {
+            return;
+        }
+        url.append(";QUERY_CACHE_SIZE=").append(properties.getStatementCacheSize());
+        if (h2.getCacheSizeKb() != null) {
+            url.append(";CACHE_SIZE=").append(h2.getCacheSizeKb());
+        }
+        if (!h2.isMvStore()) {
+            url.append(";MV_STORE=FALSE");
+        }
+        dataSource.setJdbcUrl(url.toString());
+    }
+
+    /**
+     * database.h2.mode=server: the TCP server the pool connects to, serving the databases of
+     * database.h2.directory. It is started before the data source and stopped after it.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "database.h2.mode", havingValue = "server")
+    static class H2ServerConfiguration {
+
+        @Bean(name = H2_SERVER, initMethod = "start", destroyMethod = "stop")
+        public Server h2Server(DatabaseProperties properties) throws SQLException {
+            DatabaseProperties.H2 h2 = properties.getH2();
+            return Server.createTcpServer("-tcpPort", String.valueOf(h2.getPort()), "-baseDir", h2.getDirectory());
+        }
+
+        @Bean
+        public static AbstractDependsOnBeanFactoryPostProcessor dataSourceDependsOnH2Server() {
+            return new AbstractDependsOnBeanFactoryPostProcessor(DataSource.class, H2_SERVER) {
+            };
+        }
+    }
+
+    /**
+     * database.replica.count &gt; 0: the replicas, created before the data source and closed after it.
+     */
+    @Configuration
+    @ConditionalOnExpression("${database.replica.count:0} > 0")
+    static class ReplicaConfiguration {
+
+        @Bean(name = REPLICATION, destroyMethod = "close")
+        public ReplicationStandIn replicationStandIn(DatabaseProperties properties) {
+            return new ReplicationStandIn(properties);
+        }
+
+        @Bean
+        public static AbstractDependsOnBeanFactoryPostProcessor dataSourceDependsOnReplication() {
+            return new AbstractDependsOnBeanFactoryPostProcessor(DataSource.class, REPLICATION) {
+            };
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * The database.* settings: connection pool, H2 statement cache, JDBC fetch sizes, where H2
+ * keeps the data and the read replicas. See {@link DatabaseConfiguration}.
+ */
+@ConfigurationProperties("database")
+public class DatabaseProperties {
+
+    private final Pool pool = new Pool();
+
+    /**
+     * Prepared statements H2 keeps parsed per connection (its QUERY_CACHE_SIZE, 8 by default).
+     */
+    private int statementCacheSize = 8;
+
+    private final FetchSize fetchSize = new FetchSize();
+
+    private final H2 h2 = new H2();
+
+    private final Replica replica = new Replica();
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public FetchSize getFetchSize() {
+        return fetchSize;
+    }
+
+    public H2 getH2() {
+        return h2;
+    }
+
+    public Replica getReplica() {
+        return replica;
+    }
+
+    public static class Pool {
+
+        private int maximumSize = 10;
+
+        /**
+         * Idle connections kept open, the maximum size when not set.
+         */
+        private Integer minimumIdle;
+
+        private Duration connectionTimeout = Duration.ofSeconds(30);
+
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        private Duration maxLifetime = Duration.ofMinutes(30);
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Integer getMinimumIdle() {
+            return minimumIdle;
+        }
+
+        public void setMinimumIdle(Integer minimumIdle) {
+            this.minimumIdle = minimumIdle;
+        }
+
+        public Duration getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public void setConnectionTimeout(Duration connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public Duration getMaxLifetime() {
+            return maxLifetime;
+        }
+
+        public void setMaxLifetime(Duration maxLifetime) {
+            this.maxLifetime = maxLifetime;
+        }
+    }
+
+    public static class FetchSize {
+
+        /**
+         * Rows fetched per round trip by every query, 0 for the driver's default.
+         */
+        private int defaultSize;
+
+        /**
+         * Fetch sizes of single repository queries, by "Repository.method".
+         */
+        private Map<String, Integer> queries = new LinkedHashMap<>();
+
+        public int getDefaultSize() {
+            return defaultSize;
+        }
+
+        public void setDefaultSize(int defaultSize) {
+            this.defaultSize = defaultSize;
+        }
+
+        public Map<String, Integer> getQueries() {
+            return queries;
+        }
+
+        public void setQueries(Map<String, Integer> queries) {
+            this.queries = queries;
+        }
+    }
+
+    public enum Mode {
+        /**
+         * In memory, at the spring.datasource.url (the default embedded database when not set).
+         */
+        MEM,
+        /**
+         * A file database in the directory, opened by the application alone.
+         */
+        FILE,
+        /**
+         * A file database in the directory behind a TCP server started with the application, which
+         * other clients can connect to while it runs.
+         */
+        SERVER
+    }
+
+    public static class H2 {
+
+        private Mode mode = Mode.MEM;
+
+        private String name = "catalogue";
+
+        private String directory = "./data";
+
+        private int port = 9092;
+
+        /**
+         * The page cache of H2 in KB, its default when not set.
+         */
+        private Integer cacheSizeKb;
+
+        /**
+         * MVStore or the older page store, for databases created by the application.
+         */
+        private boolean mvStore = true;
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public Integer getCacheSizeKb() {
+            return cacheSizeKb;
+        }
+
+        public void setCacheSizeKb(Integer cacheSizeKb) {
+            this.cacheSizeKb = cacheSizeKb;
+        }
+
+        public boolean isMvStore() {
+            return mvStore;
+        }
+
+        public void setMvStore(boolean mvStore) {
+            this.mvStore = mvStore;
+        }
+    }
+
+    public static class Replica {
+
+        /**
+         * In-memory H2 replicas copied from the primary by the {@link ReplicationStandIn}, none by
+         * default.
+         */
+        private int count;
+
+        /**
+         * How far behind the primary a replica may be and still serve reads, 0 for replicas that
+         * have applied every commit only.
+         */
+        private Duration maxLag = Duration.ofSeconds(1);
+
+        /**
+         * Waited by the replicas before copying the primary after a commit, to try out the lag locally.
+         */
+        private Duration delay = Duration.ZERO;
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public Duration getMaxLag() {
+            return maxLag;
+        }
+
+        public void setMaxLag(Duration maxLag) {
+            this.maxLag = maxLag;
+        }
+
+        public Duration getDelay() {
+            return delay;
+        }
+
+        public void setDelay(Duration delay) {
+            this.delay = delay;
+        }
+    }
+}
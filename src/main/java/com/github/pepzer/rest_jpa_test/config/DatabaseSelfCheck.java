@@ -0,0 +1,140 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.repository.Repository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs the pool and H2 settings in effect once the application is ready, as read back from the
+ * pool and the database, and warns about a configuration that cannot work as intended: a
+ * fetch size for a repository method that does not exist, a database opened earlier with other
+ * settings, or a pool smaller than the JDBC executor (jdbc.execution=async).
+ */
+@Component
+public class DatabaseSelfCheck {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseSelfCheck.class);
+
+    private final DataSource dataSource;
+    private final DatabaseProperties properties;
+    private final ListableBeanFactory beanFactory;
+    private final Environment environment;
+
+    public DatabaseSelfCheck(DataSource dataSource, DatabaseProperties properties, ListableBeanFactory beanFactory,
+            Environment environment) {
+        this.dataSource = dataSource;
+        this.properties = properties;
+        this.beanFactory = beanFactory;
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void logSettings() {
+        LOGGER.info("Database settings: {}", settings());
+        check().forEach(LOGGER::warn);
+    }
+
+    /**
+     * The settings in effect, by name.
+     */
+    public Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        HikariDataSource pool = pool();
+        if (pool != null) {
+            settings.put("url", pool.getJdbcUrl());
+            settings.put("pool.maximum-size", pool.getMaximumPoolSize());
+            settings.put("pool.minimum-idle", pool.getMinimumIdle());
+            settings.put("pool.connection-timeout-ms", pool.getConnectionTimeout());
+        }
+        settings.putAll(h2Settings());
+        settings.put("fetch-size.default-size", properties.getFetchSize().getDefaultSize());
+        settings.put("fetch-size.queries", properties.getFetchSize().getQueries());
+        if (properties.getReplica().getCount() > 0) {
+            settings.put("replica.count", properties.getReplica().getCount());
+            settings.put("replica.max-lag", properties.getReplica().getMaxLag());
+        }
+        return settings;
+    }
+
+    /**
+     * What does not work as configured, empty when all is well.
+     */
+    public List<String> check() {
+        List<String> problems = new ArrayList<>();
+        Set<String> methods = repositoryMethods();
+        for (String query : properties.getFetchSize().getQueries().keySet()) {
+            if (!methods.contains(query)) {
+                problems.add("database.fetch-size.queries: no repository method " + query);
+            }
+        }
+
+        Map<String, String> h2 = h2Settings();
+        String statementCache = h2.get("QUERY_CACHE_SIZE");
+        if (statementCache != null && Integer.parseInt(statementCache) != properties.getStatementCacheSize()) {
+            problems.add("database.statement-cache-size is " + properties.getStatementCacheSize()
+                    + " but the database was opened with " + statementCache);
+        }
+
+        HikariDataSource pool = pool();
+        if (pool != null && "async".equals(environment.getProperty("jdbc.execution"))) {
+            int threads = environment.getProperty("jdbc.executor.threads", Integer.class, 10);
+            if (pool.getMaximumPoolSize() < threads) {
+                problems.add("database.pool.maximum-size (" + pool.getMaximumPoolSize() + ") is below "
+                        + "jdbc.executor.threads (" + threads + "), the JDBC threads wait for connections");
+            }
+        }
+        return problems;
+    }
+
+    private HikariDataSource pool() {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private Map<String, String> h2Settings() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        if (pool() == null || !pool().getJdbcUrl().startsWith("jdbc:h2:")) {
+            return settings;
+        }
+        new JdbcTemplate(dataSource).query("SELECT NAME, VALUE FROM INFORMATION_SCHEMA.SETTINGS"
+                + " WHERE NAME IN ('QUERY_CACHE_SIZE', 'CACHE_SIZE', 'MV_STORE') ORDER BY NAME",
+                row -> {
+                    settings.put(row.getString(1), row.getString(2));
+                });
+        return settings;
+    }
+
+    private Set<String> repositoryMethods() {
+        Set<String> methods = new HashSet<>();
+        for (Object repository : beanFactory.getBeansOfType(Repository.class).values()) {
+            Class<?> type = AopProxyUtils.proxiedUserInterfaces(repository)[0];
+            for (Method method : type.getMethods()) {
+                methods.add(type.getSimpleName() + "." + method.getName());
+            }
+        }
+        return methods;
+    }
+}
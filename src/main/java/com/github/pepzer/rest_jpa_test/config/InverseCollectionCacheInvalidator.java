@@ -0,0 +1,118 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PreCollectionRemoveEvent;
+import org.hibernate.event.spi.PreCollectionRemoveEventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Author.books owns the author_book rows, Hibernate keeps its cached entries up to date but
+ * not the ones of the inverse Book.authors collection. This evicts the cached Book.authors of
+ * the books added to or removed from an author, once when the change is flushed and again
+ * after the transaction completes so a concurrent reader cannot put back the old state.
+ */
+@Component
+public class InverseCollectionCacheInvalidator implements PostCollectionRecreateEventListener,
+        PostCollectionUpdateEventListener, PreCollectionRemoveEventListener {
+
+    private static final long serialVersionUID = 1L;
+    private static final String BOOK_AUTHORS = Book.class.getName() + ".authors";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public InverseCollectionCacheInvalidator(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.PRE_COLLECTION_REMOVE, this);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        if (isAuthorBooks(event)) {
+            evict(event, changedBooks(event.getCollection()));
+        }
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        if (isAuthorBooks(event)) {
+            evict(event, changedBooks(event.getCollection()));
+        }
+    }
+
+    @Override
+    public void onPreRemoveCollection(PreCollectionRemoveEvent event) {
+        if (isAuthorBooks(event)) {
+            // The collection of a deleted author might not be loaded, drop the whole region
+            evict(event, null);
+        }
+    }
+
+    private static boolean isAuthorBooks(AbstractCollectionEvent event) {
+        // The role of a newly persisted collection is only set after the flush
+        Object owner = event.getAffectedOwnerOrNull();
+        return owner instanceof Author && ((Author) owner).getBooks() == event.getCollection();
+    }
+
+    /**
+     * The ids of the books added to or removed from an Author.books collection being flushed.
+     */
+    public static Set<Long> changedBooks(PersistentCollection collection) {
+        Serializable snapshot = collection.getStoredSnapshot();
+        Set<?> before = snapshot instanceof Map ? ((Map<?, ?>) snapshot).keySet() : new HashSet<>();
+        Collection<?> after = (Collection<?>) collection;
+
+        Set<Long> changed = new HashSet<>();
+        for (Object book : after) {
+            if (!before.contains(book)) {
+                changed.add(((Book) book).getId());
+            }
+        }
+        for (Object book : before) {
+            if (!after.contains(book)) {
+                changed.add(((Book) book).getId());
+            }
+        }
+        return changed;
+    }
+
+    private void evict(AbstractCollectionEvent event, Set<Long> bookIds) {
+        Runnable eviction = () -> {
+            org.hibernate.Cache cache = entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class);
+            if (bookIds == null) {
+                cache.evictCollectionRegion(BOOK_AUTHORS);
+            } else {
+                bookIds.forEach(id -> cache.evictCollection(BOOK_AUTHORS, id));
+            }
+        };
+        eviction.run();
+        event.getSession().getActionQueue().registerProcess((success, session) -> eviction.run());
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.mvc.method.annotation.ExceptionHandlerExceptionResolver;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * jdbc.execution=async: the read handlers of the {@link BlockingJdbc} controllers run on a
+ * bounded executor (jdbc.executor.threads, with a queue of jdbc.executor.queue-capacity
+ * requests) so a burst of slow queries does not hold every servlet thread. The default,
+ * jdbc.execution=blocking, leaves Spring MVC as is.
+ */
+@Configuration
+@ConditionalOnProperty(name = "jdbc.execution", havingValue = "async")
+public class JdbcExecutionConfiguration {
+
+    @Bean
+    public ThreadPoolTaskExecutor jdbcExecutor(@Value("${jdbc.executor.threads:10}") int threads,
+            @Value("${jdbc.executor.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        // Rejected once full (the default abort policy), the request then gets a 503
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("jdbc-");
+        executor.setTaskDecorator(new RequestContextTaskDecorator());
+        return executor;
+    }
+
+    @Bean
+    public WebMvcRegistrations jdbcOffloadingRegistrations(ThreadPoolTaskExecutor jdbcExecutor,
+            @Value("${jdbc.executor.retry-after:1}") long retryAfter) {
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerMapping getRequestMappingHandlerMapping() {
+                return null;
+            }
+
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return new JdbcOffloadingHandlerAdapter(jdbcExecutor, retryAfter);
+            }
+
+            @Override
+            public ExceptionHandlerExceptionResolver getExceptionHandlerExceptionResolver() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+
+/**
+ * Runs the GET handlers of the {@link BlockingJdbc} controllers on the JDBC executor. The
+ * arguments are resolved on the servlet thread, the handler itself is submitted to the executor
+ * and its result comes back as a CompletableFuture, which Spring MVC completes with an async
+ * dispatch. When the executor and its queue are full the request is answered at once with a 503
+ * and Retry-After instead of waiting for a thread.
+ * <p>
+ * Writes stay on the servlet thread: they rely on the EntityManager kept open for the request
+ * (lazy collections), which is not bound to the executor threads.
+ */
+class JdbcOffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+
+    private final Executor executor;
+    private final String retryAfter;
+
+    JdbcOffloadingHandlerAdapter(Executor executor, long retryAfterSeconds) {
+        this.executor = executor;
+        this.retryAfter = String.valueOf(retryAfterSeconds);
+    }
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+        if (AnnotatedElementUtils.hasAnnotation(handlerMethod.getBeanType(), BlockingJdbc.class)
+                && handlerMethod.hasMethodAnnotation(GetMapping.class)) {
+            return new OffloadedHandlerMethod(handlerMethod);
+        }
+        return super.createInvocableHandlerMethod(handlerMethod);
+    }
+
+    private class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+            super(handlerMethod);
+        }
+
+        // The return value handler is picked by the type of the value, a CompletableFuture (or
+        // the 503) is handled as such whatever the declared return type of the handler
+        @Override
+        protected Object doInvoke(Object... args) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        result.complete(super.doInvoke(args));
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, retryAfter)
+                        .build();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+
+/**
+ * app.lazy-initialization=true (the faststart profile): the beans are created when first needed
+ * instead of during startup. The SmartInitializingSingletons stay eager, their callback only runs
+ * for the beans created at startup. The post processors and the web server are created at startup
+ * whatever their definition says.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.lazy-initialization", havingValue = "true")
+public class LazyInitializationConfiguration {
+
+    @Bean
+    public static BeanFactoryPostProcessor lazyInitialization() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (!isSmartInitializingSingleton(definition, beanFactory)) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    /**
+     * Told from the definition alone: asking the bean factory for the type could create a factory
+     * bean before the post processors are registered.
+     */
+    private static boolean isSmartInitializingSingleton(BeanDefinition definition,
+            ConfigurableListableBeanFactory beanFactory) {
+        String type = definition.getBeanClassName();
+        if (definition instanceof AnnotatedBeanDefinition) {
+            MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) definition).getFactoryMethodMetadata();
+            if (factoryMethod != null) {
+                type = factoryMethod.getReturnTypeName();
+            }
+        }
+        if (type == null || !ClassUtils.isPresent(type, beanFactory.getBeanClassLoader())) {
+            return false;
+        }
+        return SmartInitializingSingleton.class
+                .isAssignableFrom(ClassUtils.resolveClassName(type, beanFactory.getBeanClassLoader()));
+    }
+}
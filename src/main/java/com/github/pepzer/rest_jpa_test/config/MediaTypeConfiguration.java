@@ -0,0 +1,171 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.mvc.TypeConstrainedMappingJackson2HttpMessageConverter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.handler.MappedInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Two more encodings of the controller responses, chosen with the Accept header: {@link #SMILE},
+ * the same HAL document in Jackson's binary JSON, and {@link #COMPACT_JSON}, HAL without the
+ * _links of the resources, for internal callers that build the URLs themselves. Both are written
+ * by copies of the HAL ObjectMapper, the repository search endpoints stay JSON only. The GET
+ * responses of these handlers vary by Accept.
+ */
+@Configuration
+public class MediaTypeConfiguration {
+
+    public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
+    public static final MediaType COMPACT_JSON = new MediaType("application", "vnd.catalogue.compact+json");
+
+    @Bean
+    static BeanPostProcessor mediaTypeConverters(@Value("${media-types.smile.enabled:true}") boolean smile,
+            @Value("${media-types.compact.enabled:true}") boolean compact) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                // The adapter of the controllers, once the HAL converters are in its list
+                if ("requestMappingHandlerAdapter".equals(beanName) && bean instanceof RequestMappingHandlerAdapter) {
+                    RequestMappingHandlerAdapter adapter = (RequestMappingHandlerAdapter) bean;
+                    adapter.setMessageConverters(withMediaTypes(adapter.getMessageConverters(), smile, compact));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    MappedInterceptor varyByAccept() {
+        return new MappedInterceptor(new String[] { "/authors/**", "/books/**" }, new HandlerInterceptorAdapter() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                // Once, the offloaded handlers are dispatched again
+                if ((HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod()))
+                        && !response.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT)) {
+                    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * The type the controllers answer with for an Accept header: HAL unless the client only accepts
+     * plain JSON, compact JSON or Smile, null if it accepts none of them.
+     */
+    public static MediaType negotiate(String accept) {
+        if (!StringUtils.hasText(accept)) {
+            return MediaTypes.HAL_JSON_UTF8;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            if (type.includes(MediaTypes.HAL_JSON)) {
+                return MediaTypes.HAL_JSON_UTF8;
+            }
+            if (type.includes(MediaType.APPLICATION_JSON)) {
+                return MediaType.APPLICATION_JSON_UTF8;
+            }
+            if (type.includes(COMPACT_JSON)) {
+                return COMPACT_JSON;
+            }
+            if (type.includes(SMILE)) {
+                return SMILE;
+            }
+        }
+        return null;
+    }
+
+    static List<HttpMessageConverter<?>> withMediaTypes(List<HttpMessageConverter<?>> converters, boolean smile,
+            boolean compact) {
+        AbstractJackson2HttpMessageConverter halConverter = halConverter(converters);
+        List<HttpMessageConverter<?>> result = new ArrayList<>(converters);
+        // Spring adds a Smile converter when the library is there, it knows nothing of HAL
+        int plainSmile = -1;
+        for (int i = 0; i < result.size(); i++) {
+            if (result.get(i) instanceof MappingJackson2SmileHttpMessageConverter) {
+                plainSmile = i;
+                break;
+            }
+        }
+        if (plainSmile >= 0) {
+            result.remove(plainSmile);
+        }
+        if (halConverter == null) {
+            return result;
+        }
+        ObjectMapper hal = halConverter.getObjectMapper();
+
+        if (smile) {
+            ObjectMapper mapper = new ObjectMapper(new SmileFactory());
+            mapper.setConfig(hal.getSerializationConfig());
+            mapper.setConfig(hal.getDeserializationConfig());
+            mapper.setSerializerFactory(hal.getSerializerFactory());
+            MappingJackson2SmileHttpMessageConverter converter = new MappingJackson2SmileHttpMessageConverter(mapper);
+            result.add(plainSmile >= 0 ? plainSmile : result.size(), converter);
+        }
+        if (compact) {
+            ObjectMapper mapper = hal.copy().addMixIn(ResourceSupport.class, LinksOmitted.class);
+            // Resources only, the cached bytes go to the byte array converter
+            MappingJackson2HttpMessageConverter converter = new TypeConstrainedMappingJackson2HttpMessageConverter(
+                    ResourceSupport.class);
+            converter.setObjectMapper(mapper);
+            converter.setSupportedMediaTypes(Collections.singletonList(COMPACT_JSON));
+            // After HAL, the first of the types of */*, ahead of the converters of any application/*+json
+            result.add(result.indexOf(halConverter) + 1, converter);
+        }
+        return result;
+    }
+
+    private static AbstractJackson2HttpMessageConverter halConverter(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof AbstractJackson2HttpMessageConverter
+                    && converter.getSupportedMediaTypes().contains(MediaTypes.HAL_JSON)) {
+                return (AbstractJackson2HttpMessageConverter) converter;
+            }
+        }
+        return null;
+    }
+
+    // Takes the place of the HAL mix-in of ResourceSupport
+    abstract static class LinksOmitted {
+
+        @JsonIgnore
+        public abstract List<Link> getLinks();
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Sends the read-only transactions to a replica of the {@link ReplicationStandIn} and everything
+ * else to the primary. A replica serves a read when it is no further behind than
+ * database.replica.max-lag and has applied the last commit the client made, known from the
+ * replica-position cookie set on the responses to writes (or from the thread outside of a
+ * request); otherwise the read goes to the primary. The reads of a request stay on one replica.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    /**
+     * Request attribute set once a read came from a replica that has not applied every commit, its
+     * result is not to be cached.
+     */
+    public static final String STALE_READ = ReplicaRoutingDataSource.class.getName() + ".STALE_READ";
+
+    static final String POSITION_COOKIE = "replica-position";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String POSITION = ReplicaRoutingDataSource.class.getName() + ".POSITION";
+    private static final String REPLICA = ReplicaRoutingDataSource.class.getName() + ".REPLICA";
+
+    private final DataSource primary;
+    private final ReplicationStandIn replication;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ThreadLocal<Long> threadPosition = new ThreadLocal<>();
+
+    ReplicaRoutingDataSource(DataSource primary, ReplicationStandIn replication) {
+        this.primary = primary;
+        this.replication = replication;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary.getConnection();
+        }
+        HttpServletRequest request = currentRequest();
+        ReplicationStandIn.Replica replica = choose(request);
+        if (replica != null) {
+            try {
+                Connection connection = replica.getDataSource().getConnection();
+                replication.reads(replica.getName()).incrementAndGet();
+                if (replica.isBehind()) {
+                    skipCaches(request);
+                }
+                return connection;
+            } catch (SQLException e) {
+                LOGGER.warn("{} is not available, reading from the primary", replica.getName(), e);
+            }
+        }
+        replication.reads(ReplicationStandIn.PRIMARY).incrementAndGet();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    /**
+     * Remembers a commit of the current client, on the request and in a cookie for its next
+     * requests, or on the thread outside of a request.
+     */
+    void committed(long position) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            threadPosition.set(position);
+            return;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        request.setAttribute(POSITION, position);
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(POSITION_COOKIE, replication.getEpoch() + "." + position);
+            cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+    }
+
+    private ReplicationStandIn.Replica choose(HttpServletRequest request) {
+        long position = request != null ? position(request) : positionOf(threadPosition.get());
+        long now = System.nanoTime();
+        if (request != null) {
+            ReplicationStandIn.Replica pinned = (ReplicationStandIn.Replica) request.getAttribute(REPLICA);
+            if (pinned != null && pinned.canServe(position, now)) {
+                return pinned;
+            }
+        }
+        List<ReplicationStandIn.Replica> replicas = replication.getReplicas();
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            ReplicationStandIn.Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.canServe(position, now)) {
+                if (request != null) {
+                    request.setAttribute(REPLICA, replica);
+                }
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The last commit of the client, from this request or an earlier one. A cookie from before a
+     * restart counts for nothing, the positions start over.
+     */
+    private long position(HttpServletRequest request) {
+        long position = positionOf((Long) request.getAttribute(POSITION));
+        if (request.getCookies() == null) {
+            return position;
+        }
+        String prefix = replication.getEpoch() + ".";
+        for (Cookie cookie : request.getCookies()) {
+            if (POSITION_COOKIE.equals(cookie.getName()) && cookie.getValue().startsWith(prefix)) {
+                try {
+                    position = Math.max(position, Long.parseLong(cookie.getValue().substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // not ours, ignored
+                }
+            }
+        }
+        return position;
+    }
+
+    private static long positionOf(Long position) {
+        return position != null ? position : 0;
+    }
+
+    /**
+     * What a lagging replica returns may already have been replaced on the primary: it must not go
+     * to the second-level cache, where nothing would evict it, nor to the response cache. The
+     * session may outlive the transaction (open-in-view), its cache mode is restored afterwards.
+     */
+    private static void skipCaches(HttpServletRequest request) {
+        if (request != null) {
+            request.setAttribute(STALE_READ, Boolean.TRUE);
+        }
+        for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+            if (!(resource instanceof EntityManagerHolder)) {
+                continue;
+            }
+            Session session = ((EntityManagerHolder) resource).getEntityManager().unwrap(Session.class);
+            CacheMode previous = session.getCacheMode();
+            if (previous == CacheMode.GET || !TransactionSynchronizationManager.isSynchronizationActive()) {
+                continue;
+            }
+            session.setCacheMode(CacheMode.GET);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    session.setCacheMode(previous);
+                }
+            });
+        }
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest()
+                : null;
+    }
+}
@@ -0,0 +1,368 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Stands in for database replication, to run with read replicas locally: database.replica.count
+ * in-memory H2 databases, each one a copy of the primary taken again after the primary has
+ * committed a write, by a thread of its own. The commits made while a copy is taken are picked
+ * up by the next one. It only counts the commits on the primary, it does not ship them: fine for
+ * a small database, not for a large one. A replica that fails to copy the primary no longer
+ * serves reads. See {@link ReplicaRoutingDataSource} for where the reads go.
+ */
+public class ReplicationStandIn implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationStandIn.class);
+
+    static final String PRIMARY = "primary";
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+    private final DatabaseProperties properties;
+    private final long delayNanos;
+    private final Duration maxLag;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Map<String, AtomicLong> reads = new LinkedHashMap<>();
+
+    // The connections that wrote in their transaction in progress
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong position = new AtomicLong();
+    private volatile DataSource primary;
+    private volatile LongConsumer commitListener = committed -> {
+    };
+
+    public ReplicationStandIn(DatabaseProperties properties) {
+        this.properties = properties;
+        this.delayNanos = properties.getReplica().getDelay().toNanos();
+        this.maxLag = properties.getReplica().getMaxLag();
+        reads.put(PRIMARY, new AtomicLong());
+        for (int i = 1; i <= properties.getReplica().getCount(); i++) {
+            String name = "replica-" + i;
+            replicas.add(new Replica(name));
+            reads.put(name, new AtomicLong());
+        }
+    }
+
+    /**
+     * The data source the application uses in place of the primary: the read-only transactions
+     * are routed to the replicas, the rest goes to the primary, whose commits are counted. The
+     * replicas start from a copy of the primary.
+     */
+    public DataSource route(DataSource primary, String name) throws SQLException {
+        this.primary = primary;
+        for (Replica replica : replicas) {
+            replica.copy();
+            replica.start();
+        }
+        DataSource counted = ProxyDataSourceBuilder.create(primary).name(name).listener(new WriteTracker())
+                .methodListener(new CommitTracker()).build();
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(counted, this);
+        commitListener = routing::committed;
+        // The connection is taken at the first statement, once the transaction is known to be read-only
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * The last transaction committed on the primary.
+     */
+    public long getPosition() {
+        return position.get();
+    }
+
+    String getEpoch() {
+        return epoch;
+    }
+
+    Duration getMaxLag() {
+        return maxLag;
+    }
+
+    AtomicLong reads(String target) {
+        return reads.get(target);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        reads.forEach((target, count) -> FunctionCounter.builder("database.routing.reads", count, AtomicLong::get)
+                .tag("target", target).description("Read-only transactions by the database they read from")
+                .register(registry));
+        for (Replica replica : replicas) {
+            Gauge.builder("database.replica.lag", replica, r -> r.lagNanos(System.nanoTime()) / 1e9)
+                    .tag("replica", replica.name).baseUnit("seconds")
+                    .description("Age of the oldest commit the replica has not applied").register(registry);
+        }
+    }
+
+    public void close() {
+        replicas.forEach(Replica::close);
+    }
+
+    private void committed() {
+        long committed = position.incrementAndGet();
+        replicas.forEach(Replica::behind);
+        commitListener.accept(committed);
+    }
+
+    private static boolean isWrite(ExecutionInfo execution, List<QueryInfo> queries) {
+        if ("executeQuery".equals(execution.getMethod().getName())) {
+            return false;
+        }
+        return queries.stream().anyMatch(query -> !query.getQuery().trim().regionMatches(true, 0, "SELECT", 0, 6));
+    }
+
+    private static boolean isAutoCommit(ExecutionInfo execution) {
+        try {
+            return execution.getStatement().getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts an auto-committed write at once, remembers the connection of the others.
+     */
+    private class WriteTracker implements QueryExecutionListener {
+
+        @Override
+        public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+            if (!execution.isSuccess() || !isWrite(execution, queries)) {
+                return;
+            }
+            if (isAutoCommit(execution)) {
+                committed();
+            } else {
+                writing.add(execution.getConnectionId());
+            }
+        }
+    }
+
+    /**
+     * Counts the commit of a connection that wrote, forgets it when it rolls back or closes.
+     */
+    private class CommitTracker implements MethodExecutionListener {
+
+        @Override
+        public void beforeMethod(MethodExecutionContext context) {
+        }
+
+        @Override
+        public void afterMethod(MethodExecutionContext context) {
+            if (!(context.getTarget() instanceof Connection)) {
+                return;
+            }
+            String connection = context.getConnectionInfo().getConnectionId();
+            String method = context.getMethod().getName();
+            // Turning auto-commit back on commits the transaction in progress
+            boolean commit = "commit".equals(method)
+                    || "setAutoCommit".equals(method) && Boolean.TRUE.equals(context.getMethodArgs()[0]);
+            if (commit && context.getThrown() == null && writing.remove(connection)) {
+                committed();
+            } else if ("rollback".equals(method) && (context.getMethodArgs() == null
+                    || context.getMethodArgs().length == 0) || "close".equals(method)) {
+                writing.remove(connection);
+            }
+        }
+    }
+
+    /**
+     * A replica, the copy of the primary it serves and the oldest commit it does not have.
+     */
+    public final class Replica {
+
+        private final String name;
+        private final Thread copier;
+        private volatile HikariDataSource dataSource;
+        private volatile long applied;
+        private volatile boolean failed;
+        private int copies;
+        private long behindSince;
+        private boolean paused;
+
+        Replica(String name) {
+            this.name = name;
+            this.copier = new Thread(this::follow, name + "-copier");
+            this.copier.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        /**
+         * The last transaction of the primary in the copy, see {@link ReplicationStandIn#getPosition()}.
+         */
+        public long getPosition() {
+            return applied;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Stops copying the primary until {@link #resume()}.
+         */
+        public synchronized void pause() {
+            paused = true;
+        }
+
+        public synchronized void resume() {
+            paused = false;
+            notifyAll();
+        }
+
+        /**
+         * Whether the replica can serve a client that has seen the given position.
+         */
+        boolean canServe(long position, long now) {
+            return !failed && applied >= position && lagNanos(now) <= maxLag.toNanos();
+        }
+
+        boolean isBehind() {
+            return applied < position.get();
+        }
+
+        synchronized long lagNanos(long now) {
+            return behindSince == 0 ? 0 : Math.max(0, now - behindSince);
+        }
+
+        synchronized void behind() {
+            if (behindSince == 0) {
+                behindSince = System.nanoTime();
+                notifyAll();
+            }
+        }
+
+        void start() {
+            copier.start();
+        }
+
+        void close() {
+            copier.interrupt();
+            try {
+                copier.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (dataSource != null) {
+                dataSource.close();
+            }
+        }
+
+        /**
+         * Loads a copy of the primary in a new in-memory database, then serves it in place of
+         * the previous one, dropped with the last of its connections.
+         */
+        void copy() throws SQLException {
+            long started = System.nanoTime();
+            long copied = position.get();
+            List<String> script = new ArrayList<>();
+            try (Connection connection = primary.getConnection();
+                    Statement statement = connection.createStatement();
+                    ResultSet rows = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS")) {
+                while (rows.next()) {
+                    script.add(rows.getString(1));
+                }
+            }
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(name + "-" + ++copies);
+            config.setJdbcUrl("jdbc:h2:mem:" + config.getPoolName() + "-" + epoch + ";QUERY_CACHE_SIZE="
+                    + properties.getStatementCacheSize());
+            config.setUsername("sa");
+            config.setMaximumPoolSize(properties.getPool().getMaximumSize());
+            config.setMinimumIdle(1);
+            HikariDataSource copy = new HikariDataSource(config);
+            try (Connection connection = copy.getConnection(); Statement statement = connection.createStatement()) {
+                for (String sql : script) {
+                    statement.execute(sql);
+                }
+            } catch (SQLException e) {
+                copy.close();
+                throw e;
+            }
+
+            HikariDataSource previous = dataSource;
+            synchronized (this) {
+                dataSource = copy;
+                applied = copied;
+                // The commits after the copy started are not in it
+                behindSince = position.get() == copied ? 0 : started;
+            }
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        private synchronized void awaitCommit() throws InterruptedException {
+            while (paused || behindSince == 0) {
+                wait();
+            }
+            long wait = behindSince + delayNanos - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+            }
+        }
+
+        private void follow() {
+            while (!failed) {
+                try {
+                    awaitCommit();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    copy();
+                } catch (SQLException e) {
+                    LOGGER.error("{} failed to copy the primary, it no longer serves reads", name, e);
+                    failed = true;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+/**
+ * Sets the fetch size of database.fetch-size.queries on the statements run by a repository method,
+ * keyed by "Repository.method". The {@link Tracker} aspect tells which method is running on the
+ * thread, the fetch size is set on the statement just before it is executed so it overrides the
+ * default and the query hints.
+ */
+class RepositoryFetchSize implements QueryExecutionListener {
+
+    private static final ThreadLocal<String> METHOD = new ThreadLocal<>();
+
+    private final Map<String, Integer> queries;
+
+    RepositoryFetchSize(Map<String, Integer> queries) {
+        this.queries = queries;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+        String method = METHOD.get();
+        Integer fetchSize = method != null ? this.queries.get(method) : null;
+        if (fetchSize == null) {
+            return;
+        }
+        try {
+            execution.getStatement().setFetchSize(fetchSize);
+        } catch (SQLException e) {
+            throw new InvalidDataAccessResourceUsageException("Cannot set the fetch size of " + method, e);
+        }
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+    }
+
+    @Aspect
+    static class Tracker {
+
+        private final Map<Class<?>, String> repositories = new ConcurrentHashMap<>();
+
+        @Around("execution(public * org.springframework.data.repository.Repository+.*(..))")
+        public Object track(ProceedingJoinPoint joinPoint) throws Throwable {
+            String repository = repositories.computeIfAbsent(joinPoint.getTarget().getClass(),
+                    type -> AopProxyUtils.proxiedUserInterfaces(joinPoint.getTarget())[0].getSimpleName());
+            // A repository method may call another one, the outer one is restored afterwards
+            String previous = METHOD.get();
+            METHOD.set(repository + "." + joinPoint.getSignature().getName());
+            try {
+                return joinPoint.proceed();
+            } finally {
+                if (previous != null) {
+                    METHOD.set(previous);
+                } else {
+                    METHOD.remove();
+                }
+            }
+        }
+    }
+}
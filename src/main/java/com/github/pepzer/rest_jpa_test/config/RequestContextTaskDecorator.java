@@ -0,0 +1,32 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Exposes the request of the submitting thread to the task, the handlers build their links from
+ * it (linkTo, ServletUriComponentsBuilder.fromCurrentRequest). The servlet thread marks its own
+ * attributes completed when it returns, the task gets a fresh holder for the same request.
+ */
+class RequestContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable task) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return task;
+        }
+        ServletRequestAttributes servlet = (ServletRequestAttributes) attributes;
+        return () -> {
+            RequestContextHolder.setRequestAttributes(
+                    new ServletRequestAttributes(servlet.getRequest(), servlet.getResponse()));
+            try {
+                task.run();
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        };
+    }
+}
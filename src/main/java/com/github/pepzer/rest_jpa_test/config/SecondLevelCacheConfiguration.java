@@ -0,0 +1,45 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+import javax.cache.CacheManager;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.JCacheRegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+
+/**
+ * The JCache CacheManager of the Hibernate regions, one per application context. The caching
+ * provider shares its managers by URI and class loader, so two contexts in one JVM (the tests)
+ * would share the entity and query regions and read the cached rows of the other database.
+ */
+@Configuration
+public class SecondLevelCacheConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager(@Value("${app.cache.config:classpath:ehcache.xml}") Resource config) {
+        try {
+            // A provider of its own, not the JVM-wide one of Caching
+            return new EhcacheCachingProvider().getCacheManager(config.getURI(), getClass().getClassLoader());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot resolve cache configuration " + config, e);
+        }
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheRegionFactory(CacheManager secondLevelCacheManager) {
+        return properties -> properties.put(AvailableSettings.CACHE_REGION_FACTORY, new JCacheRegionFactory() {
+            @Override
+            protected CacheManager getCacheManager(Properties settings) {
+                return secondLevelCacheManager;
+            }
+        });
+    }
+}
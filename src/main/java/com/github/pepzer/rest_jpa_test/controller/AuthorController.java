@@ -4,23 +4,45 @@ import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import com.github.pepzer.rest_jpa_test.bulk.BulkDeleter;
+import com.github.pepzer.rest_jpa_test.cache.ResponseCache;
+import com.github.pepzer.rest_jpa_test.config.BlockingJdbc;
 import com.github.pepzer.rest_jpa_test.entity.Author;
-import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.metrics.StatementBudget;
+import com.github.pepzer.rest_jpa_test.projection.AuthorView;
+import com.github.pepzer.rest_jpa_test.projection.BookSummary;
 import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
 import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+import com.github.pepzer.rest_jpa_test.repository.EntityVersion;
+import com.github.pepzer.rest_jpa_test.repository.LinkReport;
 import com.github.pepzer.rest_jpa_test.resource.AuthorResource;
+import com.github.pepzer.rest_jpa_test.search.CatalogueSearchIndex;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.Link;
 import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.mvc.ControllerLinkBuilder;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -29,11 +51,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @RestController
+@BlockingJdbc
 public class AuthorController {
+    private static final String EMBED_BOOKS = "books";
 
     @Autowired
     AuthorRepository repository;
@@ -41,61 +67,191 @@ public class AuthorController {
     @Autowired
     BookRepository bookRepository;
 
+    @Autowired
+    CatalogueSearchIndex searchIndex;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Value("${batch-lookup.max-items:1000}")
+    int maxBatchItems;
+
+    @Value("${batch-link.max-items:1000}")
+    int maxLinkItems;
+
     @GetMapping("/authors")
-    HttpEntity<PagedResources<AuthorResource>> getAuthors(Pageable pageable, PagedResourcesAssembler assembler) {
-
-        Page<Author> authors = repository.findAll(pageable);
-        Page<AuthorResource> authorsRes = authors.map(author -> {
-            AuthorResource authorRes = new AuthorResource(author);
-            ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getAuthors(pageable, assembler))
-                    .slash(author.getId());
-            authorRes.add(linkTo.withSelfRel());
-            authorRes.add(linkTo.slash("books").withRel("books"));
-            return authorRes;
+    @StatementBudget(4)
+    HttpEntity<?> getAuthors(Pageable pageable, PagedResourcesAssembler assembler,
+            @RequestParam(value = "embed", required = false) String embed,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        if (embed != null && !EMBED_BOOKS.equals(embed)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return responseCache.get(pageable, dependencies -> {
+            dependencies.authors();
+            if (embed != null) {
+                dependencies.books();
+            }
+            return readAuthors(pageable, assembler, embed, ifNoneMatch);
         });
+    }
+
+    private HttpEntity<PagedResources<AuthorResource>> readAuthors(Pageable pageable,
+            PagedResourcesAssembler assembler, String embed, String ifNoneMatch) {
+
+        // The version of an author does not cover the embedded books
+        if (ifNoneMatch != null && embed == null) {
+            Page<EntityVersion> versions = repository.findAllVersions(pageable);
+            String etag = ETags.of(versions, EntityVersion::getId, EntityVersion::getVersion);
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+
+        Page<AuthorView> authors = repository.findAllViews(pageable);
+        LinkTemplate authorLinks = authorLinks();
+        Map<Long, List<BookSummary>> books = embed != null ? booksOf(authors.getContent()) : null;
+        Page<AuthorResource> authorsRes = authors.map(author -> toResource(author, authorLinks, books));
         ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getAuthorsByName("", pageable, assembler));
 
         PagedResources<AuthorResource> pagedRes = assembler.toResource(authorsRes);
-        Link link = new Link(linkTo.withSelfRel().getHref() + "{?lastName,page,size,sort}", "search");
+        Link link = new Link(linkTo.withSelfRel().getHref() + "{?lastName,page,size,sort,count}", "search");
         pagedRes.add(link);
 
-        return new ResponseEntity<>(pagedRes, HttpStatus.OK);
+        if (embed != null) {
+            return new ResponseEntity<>(pagedRes, HttpStatus.OK);
+        }
+        return ResponseEntity.ok().eTag(ETags.of(authors, AuthorView::getId, AuthorView::getVersion)).body(pagedRes);
+    }
+
+    @GetMapping(value = "/authors", params = { "count=false", "!after", "!before" })
+    @StatementBudget(1)
+    HttpEntity<Resources<AuthorResource>> getAuthorsSlice(Pageable pageable) {
+
+        Slice<AuthorView> authors = repository.findAllSlice(pageable);
+        LinkTemplate authorLinks = authorLinks();
+        return new ResponseEntity<>(SlicePage.toResources(authors, author -> toResource(author, authorLinks)),
+                HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/authors", params = "after")
+    @StatementBudget(1)
+    HttpEntity<Resources<AuthorResource>> getAuthorsAfter(@RequestParam("after") String after, Pageable pageable) {
+        return getAuthorsByCursor(after, true, pageable);
+    }
+
+    @GetMapping(value = "/authors", params = "before")
+    @StatementBudget(1)
+    HttpEntity<Resources<AuthorResource>> getAuthorsBefore(@RequestParam("before") String before, Pageable pageable) {
+        return getAuthorsByCursor(before, false, pageable);
+    }
+
+    // Up to batch-lookup.max-items ids, looked up with one IN query per 500
+    @GetMapping(value = "/authors", params = "ids")
+    @StatementBudget(2)
+    HttpEntity<?> getAuthorsByIds(@RequestParam List<Long> ids) {
+        if (ids.size() > maxBatchItems) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        return responseCache.get(dependencies -> {
+            List<AuthorView> authors = repository.findViewsByIdInOrder(distinct);
+            // An unknown id may be created later
+            if (authors.contains(null)) {
+                dependencies.authors();
+            }
+            authors.stream().filter(Objects::nonNull).forEach(author -> dependencies.author(author.getId()));
+            LinkTemplate authorLinks = authorLinks();
+            return new ResponseEntity<>(BatchResources.of(distinct, authors, author -> toResource(author, authorLinks)),
+                    HttpStatus.OK);
+        });
     }
 
     @GetMapping("/authors/{id}")
-    HttpEntity<AuthorResource> getAuthor(@PathVariable Long id) {
+    @StatementBudget(2)
+    HttpEntity<?> getAuthor(@PathVariable Long id,
+            @RequestParam(value = "embed", required = false) String embed,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        if (embed != null && !EMBED_BOOKS.equals(embed)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return responseCache.get(dependencies -> readAuthor(id, embed, ifNoneMatch, dependencies.author(id)));
+    }
+
+    private HttpEntity<AuthorResource> readAuthor(Long id, String embed, String ifNoneMatch,
+            ResponseCache.Dependencies dependencies) {
+
+        if (ifNoneMatch != null && embed == null) {
+            Optional<EntityVersion> version = repository.findVersionById(id);
+            if (!version.isPresent()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = ETags.of(version.get().getVersion());
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
 
-        Optional<Author> author = repository.findById(id);
+        Optional<AuthorView> author = repository.findViewById(id);
+        if (author.isPresent() && embed != null) {
+            Map<Long, List<BookSummary>> books = booksOf(Collections.singletonList(author.get()));
+            books.values().forEach(summaries -> summaries.forEach(book -> dependencies.book(book.getId())));
+            return new ResponseEntity<>(toResource(author.get(), authorLinks(), books), HttpStatus.OK);
+        }
         if (author.isPresent()) {
-            AuthorResource authorRes = new AuthorResource(author.get());
-            ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getAuthor(author.get().getId()));
-            authorRes.add(linkTo.withSelfRel());
-            authorRes.add(linkTo.slash("books").withRel("books"));
-            return new ResponseEntity<>(authorRes, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(ETags.of(author.get().getVersion()))
+                    .body(toResource(author.get(), authorLinks()));
         }
 
         return ResponseEntity.notFound().build();
     }
 
     @GetMapping("/authors/search/findByLastName")
+    @StatementBudget(2)
     HttpEntity<PagedResources<AuthorResource>> getAuthorsByName(@Param("lastName") String lastName, Pageable pageable,
             PagedResourcesAssembler assembler) {
 
-        Page<Author> authors = repository.findByLastName(lastName, pageable);
-
-        Page<AuthorResource> authorsRes = authors.map(author -> {
-            AuthorResource authorRes = new AuthorResource(author);
-            ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getAuthors(pageable, assembler))
-                    .slash(author.getId());
-            authorRes.add(linkTo.withSelfRel());
-            authorRes.add(linkTo.slash("books").withRel("books"));
-            return authorRes;
-        });
+        Page<AuthorView> authors = repository.findViewsByLastName(lastName, pageable);
+        LinkTemplate authorLinks = authorLinks();
+        Page<AuthorResource> authorsRes = authors.map(author -> toResource(author, authorLinks));
 
         return new ResponseEntity<>(assembler.toResource(authorsRes), HttpStatus.OK);
     }
 
+    @GetMapping(value = "/authors/search/findByLastName", params = "count=false")
+    @StatementBudget(1)
+    HttpEntity<Resources<AuthorResource>> getAuthorsSliceByName(@Param("lastName") String lastName,
+            Pageable pageable) {
+
+        Slice<AuthorView> authors = repository.findSliceByLastName(lastName, pageable);
+        LinkTemplate authorLinks = authorLinks();
+        return new ResponseEntity<>(SlicePage.toResources(authors, author -> toResource(author, authorLinks)),
+                HttpStatus.OK);
+    }
+
+    @GetMapping("/authors/search/byName")
+    @StatementBudget(1)
+    HttpEntity<PagedResources<AuthorResource>> searchAuthors(@RequestParam("q") String q, Pageable pageable,
+            PagedResourcesAssembler assembler) {
+
+        Page<Long> ids = searchIndex.searchAuthors(q, pageable);
+        Map<Long, AuthorView> authors = repository.findViewsByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(AuthorView::getId, Function.identity()));
+        LinkTemplate authorLinks = authorLinks();
+        List<AuthorResource> content = ids.getContent().stream().map(authors::get).filter(Objects::nonNull)
+                .map(author -> toResource(author, authorLinks)).collect(Collectors.toList());
+
+        return new ResponseEntity<>(assembler.toResource(new PageImpl<>(content, pageable, ids.getTotalElements())),
+                HttpStatus.OK);
+    }
+
     @PostMapping("/authors")
+    @StatementBudget(2)
     public ResponseEntity<Object> createAuthor(@RequestBody Author author) {
         Author savedAuthor = repository.save(author);
 
@@ -106,27 +262,110 @@ public class AuthorController {
     }
 
     @PutMapping("/authors/{author-id}/books/{book-id}")
+    @StatementBudget(3)
     public ResponseEntity<Object> addAuthorBook(@PathVariable("author-id") Long authorId,
             @PathVariable("book-id") Long bookId) {
 
-        Optional<Author> author = repository.findById(authorId);
-        if (author.isPresent()) {
-            Optional<Book> book = bookRepository.findById(bookId);
-            if (book.isPresent()) {
-                Author saveAuthor = author.get();
-                saveAuthor.getBooks().add(book.get());
-                repository.save(saveAuthor);
-                ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getAuthors(null, null))
-                        .slash(saveAuthor.getId()).slash("books");
-                return ResponseEntity.created(linkTo.toUri()).build();
-            }
+        // Linking twice is not an error, the second PUT finds the link in place
+        Optional<LinkReport> report = repository.linkBooks(authorId, Collections.singleton(bookId));
+        if (!report.isPresent() || !report.get().getUnknown().isEmpty()) {
+            return ResponseEntity.badRequest().build();
         }
-        return ResponseEntity.badRequest().build();
+        URI books = URI.create(authorLinks().rel(authorId, "books").getHref());
+        return report.get().getLinked().isEmpty() ? ResponseEntity.ok().location(books).build()
+                : ResponseEntity.created(books).build();
+    }
+
+    @PostMapping("/authors/{author-id}/books/batch")
+    @StatementBudget(3)
+    public ResponseEntity<LinkReport> addAuthorBooks(@PathVariable("author-id") Long authorId,
+            @RequestBody List<Long> bookIds) {
+        // Up to batch-link.max-items ids, they go to one IN list and one insert
+        if (bookIds.size() > maxLinkItems) {
+            return ResponseEntity.badRequest().build();
+        }
+        return repository.linkBooks(authorId, bookIds).map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/authors/{id}")
+    @StatementBudget(3)
     public ResponseEntity<Object> deleteAuthor(@PathVariable Long id) {
-        repository.deleteById(id);
+        if (bulkDeleter.deleteAuthors(Collections.singleton(id)) == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping(value = "/authors", params = "ids")
+    @StatementBudget(3)
+    public ResponseEntity<Object> deleteAuthors(@RequestParam List<Long> ids) {
+        // One chunk per request, the unknown ids are ignored
+        if (ids.size() > BulkDeleter.CHUNK_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        bulkDeleter.deleteAuthors(ids);
         return ResponseEntity.noContent().build();
     }
+
+    private HttpEntity<Resources<AuthorResource>> getAuthorsByCursor(String cursor, boolean forward,
+            Pageable pageable) {
+
+        // An empty "after" starts from the first row, the sort is then carried by the cursors
+        Optional<KeysetCursor> position = cursor.isEmpty() && forward
+                ? KeysetCursor.first(pageable.getSort(), "lastName")
+                : KeysetCursor.decode(cursor);
+        if (!position.isPresent()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        KeysetCursor from = position.get();
+        Pageable limit = PageRequest.of(0, pageable.getPageSize() + 1);
+        List<AuthorView> authors;
+        if (KeysetCursor.ID.equals(from.getSort())) {
+            authors = forward ? repository.findByIdAfter(from.getId(), limit)
+                    : repository.findByIdBefore(from.getId(), limit);
+        } else if ("lastName".equals(from.getSort())) {
+            authors = forward ? repository.findByLastNameAfter(from.getValue(), from.getId(), limit)
+                    : repository.findByLastNameBefore(from.getValue(), from.getId(), limit);
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+
+        LinkTemplate authorLinks = authorLinks();
+        Resources<AuthorResource> res = KeysetPage.toResources(authors, pageable.getPageSize(), forward,
+                !cursor.isEmpty(),
+                author -> new KeysetCursor(from.getSort(), author.getId(),
+                        KeysetCursor.ID.equals(from.getSort()) ? "" : author.getLastName()),
+                author -> toResource(author, authorLinks));
+        return new ResponseEntity<>(res, HttpStatus.OK);
+    }
+
+    static LinkTemplate authorLinks() {
+        return new LinkTemplate(linkTo(methodOn(AuthorController.class).getAuthors(null, null, null, null)));
+    }
+
+    private static AuthorResource toResource(AuthorView author, LinkTemplate authorLinks) {
+        AuthorResource authorRes = new AuthorResource(author);
+        authorRes.add(authorLinks.self(author.getId()));
+        authorRes.add(authorLinks.rel(author.getId(), "books"));
+        return authorRes;
+    }
+
+    private Map<Long, List<BookSummary>> booksOf(List<AuthorView> authors) {
+        if (authors.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> ids = authors.stream().map(AuthorView::getId).collect(Collectors.toList());
+        return repository.findBookSummaries(ids).stream().collect(Collectors.groupingBy(BookSummary::getAuthorId));
+    }
+
+    private static AuthorResource toResource(AuthorView author, LinkTemplate authorLinks,
+            Map<Long, List<BookSummary>> books) {
+        AuthorResource authorRes = toResource(author, authorLinks);
+        if (books != null) {
+            authorRes.embed(EMBED_BOOKS, books.getOrDefault(author.getId(), Collections.emptyList()));
+        }
+        return authorRes;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.Resources;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Renders a multi-get: the resources found, in the order they were asked for, and the keys that
+ * matched nothing in "notFound", in the same order.
+ */
+class BatchResources<R extends ResourceSupport> extends Resources<R> {
+
+    private final List<Object> notFound;
+
+    private BatchResources(List<R> content, List<Object> notFound) {
+        super(content, new Link(ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString()));
+        this.notFound = notFound;
+    }
+
+    /**
+     * @param found the row of each key, null when there is none
+     */
+    static <K, T, R extends ResourceSupport> BatchResources<R> of(List<K> keys, List<T> found,
+            Function<T, R> toResource) {
+        List<R> content = new ArrayList<>(keys.size());
+        List<Object> notFound = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (found.get(i) != null) {
+                content.add(toResource.apply(found.get(i)));
+            } else {
+                notFound.add(keys.get(i));
+            }
+        }
+        return new BatchResources<>(content, notFound);
+    }
+
+    @JsonProperty("notFound")
+    public List<Object> getNotFound() {
+        return notFound;
+    }
+}
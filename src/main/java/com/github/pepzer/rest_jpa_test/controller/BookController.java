@@ -4,23 +4,45 @@ import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.bulk.BulkDeleter;
+import com.github.pepzer.rest_jpa_test.cache.ResponseCache;
+import com.github.pepzer.rest_jpa_test.config.BlockingJdbc;
 import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.metrics.StatementBudget;
+import com.github.pepzer.rest_jpa_test.projection.AuthorSummary;
+import com.github.pepzer.rest_jpa_test.projection.BookView;
 import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
 import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+import com.github.pepzer.rest_jpa_test.repository.EntityVersion;
+import com.github.pepzer.rest_jpa_test.repository.LinkReport;
 import com.github.pepzer.rest_jpa_test.resource.BookResource;
+import com.github.pepzer.rest_jpa_test.search.CatalogueSearchIndex;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.Link;
 import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.mvc.ControllerLinkBuilder;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -29,11 +51,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @RestController
+@BlockingJdbc
 public class BookController {
+    private static final String EMBED_AUTHORS = "authors";
 
     @Autowired
     BookRepository repository;
@@ -41,58 +67,193 @@ public class BookController {
     @Autowired
     AuthorRepository authorRepo;
 
+    @Autowired
+    CatalogueSearchIndex searchIndex;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Value("${batch-lookup.max-items:1000}")
+    int maxBatchItems;
+
     @GetMapping("/books")
-    HttpEntity<PagedResources<BookResource>> getBooks(Pageable pageable, PagedResourcesAssembler assembler) {
-
-        Page<Book> books = repository.findAll(pageable);
-        Page<BookResource> booksRes = books.map(book -> {
-            BookResource bookRes = new BookResource(book);
-            ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getBooks(pageable, assembler))
-                    .slash(book.getId());
-            bookRes.add(linkTo.withSelfRel());
-            bookRes.add(linkTo.slash("authors").withRel("authors"));
-            return bookRes;
+    @StatementBudget(4)
+    HttpEntity<?> getBooks(Pageable pageable, PagedResourcesAssembler assembler,
+            @RequestParam(value = "embed", required = false) String embed,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        if (embed != null && !EMBED_AUTHORS.equals(embed)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return responseCache.get(pageable, dependencies -> {
+            dependencies.books();
+            if (embed != null) {
+                dependencies.authors();
+            }
+            return readBooks(pageable, assembler, embed, ifNoneMatch);
         });
-        ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getBooksByIsbn(""));
+    }
+
+    private HttpEntity<PagedResources<BookResource>> readBooks(Pageable pageable, PagedResourcesAssembler assembler,
+            String embed, String ifNoneMatch) {
+
+        // The version of a book does not cover the embedded authors
+        if (ifNoneMatch != null && embed == null) {
+            Page<EntityVersion> versions = repository.findAllVersions(pageable);
+            String etag = ETags.of(versions, EntityVersion::getId, EntityVersion::getVersion);
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+
+        Page<BookView> books = repository.findAllViews(pageable);
+        LinkTemplate bookLinks = bookLinks();
+        Map<Long, List<AuthorSummary>> authors = embed != null ? authorsOf(books.getContent()) : null;
+        Page<BookResource> booksRes = books.map(book -> toResource(book, bookLinks, authors));
+        ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getBooksByIsbn("", null));
 
         PagedResources<BookResource> pagedRes = assembler.toResource(booksRes);
         Link link = new Link(linkTo.withSelfRel().getHref() + "{?isbn}", "search");
         pagedRes.add(link);
-        return new ResponseEntity<>(pagedRes, HttpStatus.OK);
+        if (embed != null) {
+            return new ResponseEntity<>(pagedRes, HttpStatus.OK);
+        }
+        return ResponseEntity.ok().eTag(ETags.of(books, BookView::getId, BookView::getVersion)).body(pagedRes);
+    }
+
+    @GetMapping(value = "/books", params = { "count=false", "!after", "!before" })
+    @StatementBudget(1)
+    HttpEntity<Resources<BookResource>> getBooksSlice(Pageable pageable) {
+
+        Slice<BookView> books = repository.findAllSlice(pageable);
+        LinkTemplate bookLinks = bookLinks();
+        return new ResponseEntity<>(SlicePage.toResources(books, book -> toResource(book, bookLinks)), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/books", params = "after")
+    @StatementBudget(1)
+    HttpEntity<Resources<BookResource>> getBooksAfter(@RequestParam("after") String after, Pageable pageable) {
+        return getBooksByCursor(after, true, pageable);
+    }
+
+    @GetMapping(value = "/books", params = "before")
+    @StatementBudget(1)
+    HttpEntity<Resources<BookResource>> getBooksBefore(@RequestParam("before") String before, Pageable pageable) {
+        return getBooksByCursor(before, false, pageable);
+    }
+
+    // Up to batch-lookup.max-items ISBNs, looked up with one IN query per 500
+    @GetMapping(value = "/books", params = "isbns")
+    @StatementBudget(2)
+    HttpEntity<?> getBooksByIsbns(@RequestParam List<String> isbns) {
+        if (isbns.size() > maxBatchItems) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(isbns));
+        return responseCache.get(dependencies -> {
+            List<BookView> books = repository.findViewsByIsbnInOrder(distinct);
+            // An unknown ISBN may be created later, or given to another book
+            if (books.contains(null)) {
+                dependencies.books();
+            }
+            books.stream().filter(Objects::nonNull).forEach(book -> dependencies.book(book.getId()));
+            LinkTemplate bookLinks = bookLinks();
+            return new ResponseEntity<>(BatchResources.of(distinct, books, book -> toResource(book, bookLinks)),
+                    HttpStatus.OK);
+        });
     }
 
     @GetMapping("/books/{id}")
-    HttpEntity<BookResource> getBook(@PathVariable Long id) {
+    @StatementBudget(2)
+    HttpEntity<?> getBook(@PathVariable Long id,
+            @RequestParam(value = "embed", required = false) String embed,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        if (embed != null && !EMBED_AUTHORS.equals(embed)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return responseCache.get(dependencies -> readBook(id, embed, ifNoneMatch, dependencies.book(id)));
+    }
+
+    private HttpEntity<BookResource> readBook(Long id, String embed, String ifNoneMatch,
+            ResponseCache.Dependencies dependencies) {
+
+        if (ifNoneMatch != null && embed == null) {
+            Optional<EntityVersion> version = repository.findVersionById(id);
+            if (!version.isPresent()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = ETags.of(version.get().getVersion());
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
 
-        Optional<Book> book = repository.findById(id);
+        Optional<BookView> book = repository.findViewById(id);
+        if (book.isPresent() && embed != null) {
+            Map<Long, List<AuthorSummary>> authors = authorsOf(Collections.singletonList(book.get()));
+            authors.values().forEach(summaries -> summaries.forEach(author -> dependencies.author(author.getId())));
+            return new ResponseEntity<>(toResource(book.get(), bookLinks(), authors), HttpStatus.OK);
+        }
         if (book.isPresent()) {
-            BookResource bookRes = new BookResource(book.get());
-            ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getBook(book.get().getId()));
-            bookRes.add(linkTo.withSelfRel());
-            bookRes.add(linkTo.slash("authors").withRel("authors"));
-            return new ResponseEntity<>(bookRes, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(ETags.of(book.get().getVersion()))
+                    .body(toResource(book.get(), bookLinks()));
         }
 
         return ResponseEntity.notFound().build();
     }
 
     @GetMapping("/books/search/findByIsbn")
-    HttpEntity<BookResource> getBooksByIsbn(@Param("isbn") String isbn) {
+    @StatementBudget(2)
+    HttpEntity<?> getBooksByIsbn(@Param("isbn") String isbn,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return responseCache.get(dependencies -> readBookByIsbn(isbn, ifNoneMatch, dependencies));
+    }
 
-        Optional<Book> book = repository.findByIsbn(isbn);
-        if (book.isPresent()) {
-            BookResource bookRes = new BookResource(book.get());
-            ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getBooks(null, null))
-                    .slash(book.get().getId());
-            bookRes.add(linkTo.withSelfRel());
-            bookRes.add(linkTo.slash("authors").withRel("authors"));
+    private HttpEntity<BookResource> readBookByIsbn(String isbn, String ifNoneMatch,
+            ResponseCache.Dependencies dependencies) {
 
-            return new ResponseEntity<>(bookRes, HttpStatus.OK);
+        if (ifNoneMatch != null) {
+            Optional<EntityVersion> version = repository.findVersionByIsbn(isbn);
+            if (!version.isPresent()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = ETags.of(version.get().getVersion());
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+
+        Optional<BookView> book = repository.findViewByIsbn(isbn);
+        if (book.isPresent()) {
+            dependencies.book(book.get().getId());
+            return ResponseEntity.ok().eTag(ETags.of(book.get().getVersion()))
+                    .body(toResource(book.get(), bookLinks()));
         }
         return ResponseEntity.notFound().build();
     }
 
+    @GetMapping("/books/search/byTitle")
+    @StatementBudget(1)
+    HttpEntity<PagedResources<BookResource>> searchBooks(@RequestParam("q") String q, Pageable pageable,
+            PagedResourcesAssembler assembler) {
+
+        Page<Long> ids = searchIndex.searchBooks(q, pageable);
+        Map<Long, BookView> books = repository.findViewsByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(BookView::getId, Function.identity()));
+        LinkTemplate bookLinks = bookLinks();
+        List<BookResource> content = ids.getContent().stream().map(books::get).filter(Objects::nonNull)
+                .map(book -> toResource(book, bookLinks)).collect(Collectors.toList());
+
+        return new ResponseEntity<>(assembler.toResource(new PageImpl<>(content, pageable, ids.getTotalElements())),
+                HttpStatus.OK);
+    }
+
     @PostMapping("/books")
+    @StatementBudget(2)
     public ResponseEntity<Object> createStudent(@RequestBody Book book) {
         Book savedBook = repository.save(book);
 
@@ -103,27 +264,96 @@ public class BookController {
     }
 
     @PutMapping("/books/{book-id}/authors/{author-id}")
+    @StatementBudget(3)
     public ResponseEntity<Object> addBookAuthor(@PathVariable("book-id") Long bookId,
             @PathVariable("author-id") Long authorId) {
 
-        Optional<Author> author = authorRepo.findById(authorId);
-        if (author.isPresent()) {
-            Optional<Book> book = repository.findById(bookId);
-            if (book.isPresent()) {
-                Author saveAuthor = author.get();
-                saveAuthor.getBooks().add(book.get());
-                authorRepo.save(saveAuthor);
-                ControllerLinkBuilder linkTo = linkTo(methodOn(this.getClass()).getBooks(null, null))
-                        .slash(book.get().getId()).slash("authors");
-                return ResponseEntity.created(linkTo.toUri()).build();
-            }
+        Optional<LinkReport> report = authorRepo.linkBooks(authorId, Collections.singleton(bookId));
+        if (!report.isPresent() || !report.get().getUnknown().isEmpty()) {
+            return ResponseEntity.badRequest().build();
         }
-        return ResponseEntity.badRequest().build();
+        URI authors = URI.create(bookLinks().rel(bookId, "authors").getHref());
+        return report.get().getLinked().isEmpty() ? ResponseEntity.ok().location(authors).build()
+                : ResponseEntity.created(authors).build();
     }
 
     @DeleteMapping("/books/{id}")
+    @StatementBudget(4)
     public ResponseEntity<Object> deleteBook(@PathVariable Long id) {
-        repository.deleteById(id);
+        if (bulkDeleter.deleteBooks(Collections.singleton(id)) == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping(value = "/books", params = "ids")
+    @StatementBudget(4)
+    public ResponseEntity<Object> deleteBooks(@RequestParam List<Long> ids) {
+        // One chunk per request, the unknown ids are ignored
+        if (ids.size() > BulkDeleter.CHUNK_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        bulkDeleter.deleteBooks(ids);
         return ResponseEntity.noContent().build();
     }
+
+    private HttpEntity<Resources<BookResource>> getBooksByCursor(String cursor, boolean forward, Pageable pageable) {
+
+        // An empty "after" starts from the first row, the sort is then carried by the cursors
+        Optional<KeysetCursor> position = cursor.isEmpty() && forward
+                ? KeysetCursor.first(pageable.getSort(), "title")
+                : KeysetCursor.decode(cursor);
+        if (!position.isPresent()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        KeysetCursor from = position.get();
+        Pageable limit = PageRequest.of(0, pageable.getPageSize() + 1);
+        List<BookView> books;
+        if (KeysetCursor.ID.equals(from.getSort())) {
+            books = forward ? repository.findByIdAfter(from.getId(), limit)
+                    : repository.findByIdBefore(from.getId(), limit);
+        } else if ("title".equals(from.getSort())) {
+            books = forward ? repository.findByTitleAfter(from.getValue(), from.getId(), limit)
+                    : repository.findByTitleBefore(from.getValue(), from.getId(), limit);
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+
+        LinkTemplate bookLinks = bookLinks();
+        Resources<BookResource> res = KeysetPage.toResources(books, pageable.getPageSize(), forward,
+                !cursor.isEmpty(),
+                book -> new KeysetCursor(from.getSort(), book.getId(),
+                        KeysetCursor.ID.equals(from.getSort()) ? "" : book.getTitle()),
+                book -> toResource(book, bookLinks));
+        return new ResponseEntity<>(res, HttpStatus.OK);
+    }
+
+    static LinkTemplate bookLinks() {
+        return new LinkTemplate(linkTo(methodOn(BookController.class).getBooks(null, null, null, null)));
+    }
+
+    private static BookResource toResource(BookView book, LinkTemplate bookLinks) {
+        BookResource bookRes = new BookResource(book);
+        bookRes.add(bookLinks.self(book.getId()));
+        bookRes.add(bookLinks.rel(book.getId(), "authors"));
+        return bookRes;
+    }
+
+    private Map<Long, List<AuthorSummary>> authorsOf(List<BookView> books) {
+        if (books.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> ids = books.stream().map(BookView::getId).collect(Collectors.toList());
+        return repository.findAuthorSummaries(ids).stream().collect(Collectors.groupingBy(AuthorSummary::getBookId));
+    }
+
+    private static BookResource toResource(BookView book, LinkTemplate bookLinks,
+            Map<Long, List<AuthorSummary>> authors) {
+        BookResource bookRes = toResource(book, bookLinks);
+        if (authors != null) {
+            bookRes.embed(EMBED_AUTHORS, authors.getOrDefault(book.getId(), Collections.emptyList()));
+        }
+        return bookRes;
+    }
 }
\ No newline at end of file
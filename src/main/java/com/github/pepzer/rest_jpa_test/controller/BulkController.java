@@ -0,0 +1,30 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.github.pepzer.rest_jpa_test.bulk.BulkImporter;
+import com.github.pepzer.rest_jpa_test.bulk.BulkReport;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class BulkController {
+
+    @Autowired
+    BulkImporter importer;
+
+    // The body is read line by line while the import goes on, it is never held in memory
+    @PostMapping(value = "/bulk", consumes = { "application/x-ndjson", MediaType.TEXT_PLAIN_VALUE })
+    public ResponseEntity<BulkReport> bulkImport(InputStream body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        return ResponseEntity.ok(importer.importLines(reader));
+    }
+}
\ No newline at end of file
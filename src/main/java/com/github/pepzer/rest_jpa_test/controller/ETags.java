@@ -0,0 +1,74 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import com.github.pepzer.rest_jpa_test.config.MediaTypeConfiguration;
+
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Strong entity tags derived from the @Version of the entities: the version for a single
+ * resource (the format used by Spring Data REST), a digest of the total and of the id/version
+ * of each row for a page. They can be computed from a version projection, so an unchanged
+ * resource is answered with 304 Not Modified without loading the entities. The compact JSON and
+ * Smile representations of the current request get their own tags ("1-smile").
+ */
+public class ETags {
+
+    private ETags() {
+    }
+
+    static String of(Long version) {
+        return tag(String.valueOf(version));
+    }
+
+    static <T> String of(Page<T> page, Function<T, Long> id, Function<T, Long> version) {
+        StringBuilder state = new StringBuilder().append(page.getTotalElements());
+        for (T row : page) {
+            state.append(',').append(id.apply(row)).append('.').append(version.apply(row));
+        }
+        return tag(DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String tag(String value) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        MediaType representation = attributes instanceof ServletRequestAttributes ? MediaTypeConfiguration
+                .negotiate(((ServletRequestAttributes) attributes).getRequest().getHeader(HttpHeaders.ACCEPT)) : null;
+        if (MediaTypeConfiguration.COMPACT_JSON.equals(representation)) {
+            return "\"" + value + "-compact\"";
+        }
+        if (MediaTypeConfiguration.SMILE.equals(representation)) {
+            return "\"" + value + "-smile\"";
+        }
+        // HAL and plain JSON are the same bytes
+        return "\"" + value + "\"";
+    }
+
+    /**
+     * Whether an If-None-Match header (a list of tags or "*") matches the current tag, weak
+     * tags sent back by a client are compared by value.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (!StringUtils.hasText(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
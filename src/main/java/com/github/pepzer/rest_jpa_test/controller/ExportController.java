@@ -0,0 +1,47 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import com.github.pepzer.rest_jpa_test.export.CatalogueExporter;
+import com.github.pepzer.rest_jpa_test.export.ExportFormat;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+public class ExportController {
+
+    @Autowired
+    CatalogueExporter exporter;
+
+    @GetMapping("/export/books")
+    ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().contentType(exportFormat.getMediaType())
+                .body(out -> exporter.exportBooks(exportFormat, out));
+    }
+
+    @GetMapping("/export/authors")
+    ResponseEntity<StreamingResponseBody> exportAuthors(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().contentType(exportFormat.getMediaType())
+                .body(out -> exporter.exportAuthors(exportFormat, out));
+    }
+
+    private static ExportFormat parse(String format) {
+        for (ExportFormat exportFormat : ExportFormat.values()) {
+            if (exportFormat.name().equalsIgnoreCase(format)) {
+                return exportFormat;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
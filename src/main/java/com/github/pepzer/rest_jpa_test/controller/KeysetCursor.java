@@ -0,0 +1,75 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Opaque position for keyset (seek) pagination: the sort property, the sort value and the
+ * id of a row, the id breaks ties between rows with the same sort value.
+ */
+class KeysetCursor {
+    static final String ID = "id";
+
+    private final String sort;
+    private final long id;
+    private final String value;
+
+    KeysetCursor(String sort, long id, String value) {
+        this.sort = sort;
+        this.id = id;
+        this.value = value;
+    }
+
+    /**
+     * Position before the first row, ordered by the id or by one of the given properties
+     * (ascending only), empty if the requested sort is not supported.
+     */
+    static Optional<KeysetCursor> first(Sort sort, String... properties) {
+        List<Sort.Order> orders = sort.stream().collect(Collectors.toList());
+        if (orders.isEmpty()) {
+            return Optional.of(new KeysetCursor(ID, Long.MIN_VALUE, ""));
+        }
+        Sort.Order order = orders.get(0);
+        if (orders.size() > 1 || order.isDescending()
+                || !(ID.equals(order.getProperty()) || Arrays.asList(properties).contains(order.getProperty()))) {
+            return Optional.empty();
+        }
+        return Optional.of(new KeysetCursor(order.getProperty(), Long.MIN_VALUE, ""));
+    }
+
+    static Optional<KeysetCursor> decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split("\n", 3);
+            if (parts.length != 3) {
+                return Optional.empty();
+            }
+            return Optional.of(new KeysetCursor(parts[0], Long.parseLong(parts[1]), parts[2]));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    String encode() {
+        String raw = sort + "\n" + id + "\n" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String getSort() {
+        return sort;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.Resources;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Renders a page fetched by a seek query: the query is expected to return up to size + 1 rows
+ * moving away from the cursor (descending for "before"), the extra row only tells whether
+ * there is more. No count query is involved, the page carries next/prev links with cursors.
+ */
+class KeysetPage {
+
+    private KeysetPage() {
+    }
+
+    static <T, R extends ResourceSupport> Resources<R> toResources(List<T> rows, int size, boolean forward,
+            boolean fromCursor, Function<T, KeysetCursor> cursorOf, Function<T, R> toResource) {
+
+        boolean hasMore = rows.size() > size;
+        List<T> page = new ArrayList<>(rows.subList(0, Math.min(size, rows.size())));
+        if (!forward) {
+            Collections.reverse(page);
+        }
+
+        List<R> content = page.stream().map(toResource).collect(Collectors.toList());
+        Resources<R> resources = new Resources<>(content,
+                new Link(ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString()));
+        if (!page.isEmpty()) {
+            if (!forward || hasMore) {
+                resources.add(link("after", cursorOf.apply(page.get(page.size() - 1)), Link.REL_NEXT));
+            }
+            if (forward ? fromCursor : hasMore) {
+                resources.add(link("before", cursorOf.apply(page.get(0)), Link.REL_PREVIOUS));
+            }
+        }
+        return resources;
+    }
+
+    private static Link link(String param, KeysetCursor cursor, String rel) {
+        String href = ServletUriComponentsBuilder.fromCurrentRequest().replaceQueryParam("after")
+                .replaceQueryParam("before").replaceQueryParam("sort").replaceQueryParam(param, cursor.encode())
+                .build().toUriString();
+        return new Link(href, rel);
+    }
+}
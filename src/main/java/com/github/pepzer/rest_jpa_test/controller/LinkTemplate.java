@@ -0,0 +1,30 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.mvc.ControllerLinkBuilder;
+
+/**
+ * Links for the items of a collection route, e.g. /authors/{id} and /authors/{id}/books.
+ * The base URI is resolved once through ControllerLinkBuilder (a proxy invocation plus
+ * request inspection), the links of each row are then stamped by appending the id.
+ */
+class LinkTemplate {
+    private final String base;
+
+    LinkTemplate(ControllerLinkBuilder collection) {
+        // Drop the optional request parameters of the collection route, e.g. {?embed}
+        base = collection.withSelfRel().expand().getHref();
+    }
+
+    String href(Object id) {
+        return base + "/" + id;
+    }
+
+    Link self(Object id) {
+        return new Link(href(id));
+    }
+
+    Link rel(Object id, String rel) {
+        return new Link(href(id) + "/" + rel, rel);
+    }
+}
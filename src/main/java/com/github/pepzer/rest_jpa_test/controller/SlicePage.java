@@ -0,0 +1,39 @@
+package com.github.pepzer.rest_jpa_test.controller;
+
+import java.util.function.Function;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.Resources;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Renders a Slice (a page fetched without the count query): prev/next links by page number
+ * but no totalElements/totalPages metadata.
+ */
+class SlicePage {
+
+    private SlicePage() {
+    }
+
+    static <T, R extends ResourceSupport> Resources<R> toResources(Slice<T> slice, Function<T, R> toResource) {
+        Resources<R> resources = new Resources<>(slice.map(toResource).getContent(),
+                new Link(ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString()));
+        if (slice.hasNext()) {
+            resources.add(link(slice.nextPageable(), Link.REL_NEXT));
+        }
+        if (slice.hasPrevious()) {
+            resources.add(link(slice.previousPageable(), Link.REL_PREVIOUS));
+        }
+        return resources;
+    }
+
+    private static Link link(Pageable pageable, String rel) {
+        String href = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("page", pageable.getPageNumber()).replaceQueryParam("size", pageable.getPageSize())
+                .build().toUriString();
+        return new Link(href, rel);
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.pepzer.rest_jpa_test.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes the whole catalogue to a stream while it is read. The rows come from a forward-only
+ * scalar query (one row per entity and related id, ordered by entity), they are folded into
+ * one record per entity as they arrive, so neither the result nor any entity is kept: the heap
+ * used does not depend on the size of the tables and the persistence context stays empty.
+ */
+@Component
+public class CatalogueExporter {
+
+    private static final String[] BOOK_COLUMNS = { "id", "isbn", "title", "authorIds" };
+    private static final String[] AUTHOR_COLUMNS = { "id", "firstName", "lastName", "bookIds" };
+
+    private final AuthorRepository authorRepository;
+    private final BookRepository bookRepository;
+    private final TransactionTemplate readOnly;
+
+    public CatalogueExporter(AuthorRepository authorRepository, BookRepository bookRepository,
+            PlatformTransactionManager transactionManager) {
+        this.authorRepository = authorRepository;
+        this.bookRepository = bookRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    public void exportBooks(ExportFormat format, OutputStream out) throws IOException {
+        export(format, BOOK_COLUMNS, bookRepository::streamWithAuthorIds, out);
+    }
+
+    public void exportAuthors(ExportFormat format, OutputStream out) throws IOException {
+        export(format, AUTHOR_COLUMNS, authorRepository::streamWithBookIds, out);
+    }
+
+    private void export(ExportFormat format, String[] columns, Supplier<Stream<Object[]>> query,
+            OutputStream out) throws IOException {
+        try (RecordWriter writer = format.writer(columns, out)) {
+            readOnly.execute(status -> {
+                try (Stream<Object[]> rows = query.get()) {
+                    write(rows.iterator(), writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void write(Iterator<Object[]> rows, RecordWriter writer) throws IOException {
+        Object[] record = null;
+        List<Object> related = new ArrayList<>();
+        while (rows.hasNext()) {
+            Object[] row = rows.next();
+            if (record != null && !record[0].equals(row[0])) {
+                writer.write(record, related);
+                related.clear();
+            }
+            record = row;
+            Object relatedId = row[row.length - 1];
+            if (relatedId != null) {
+                related.add(relatedId);
+            }
+        }
+        if (record != null) {
+            writer.write(record, related);
+        }
+    }
+}
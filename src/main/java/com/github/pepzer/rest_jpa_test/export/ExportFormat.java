@@ -0,0 +1,107 @@
+package com.github.pepzer.rest_jpa_test.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.springframework.http.MediaType;
+
+public enum ExportFormat {
+
+    /**
+     * One JSON object per line, the related ids as an array.
+     */
+    NDJSON(new MediaType("application", "x-ndjson")) {
+        @Override
+        RecordWriter writer(String[] columns, OutputStream out) throws IOException {
+            JsonGenerator generator = JSON.createGenerator(out);
+            return new RecordWriter() {
+                @Override
+                public void write(Object[] row, List<Object> related) throws IOException {
+                    generator.writeStartObject();
+                    for (int i = 0; i < row.length - 1; i++) {
+                        generator.writeFieldName(columns[i]);
+                        generator.writeObject(row[i]);
+                    }
+                    generator.writeArrayFieldStart(columns[row.length - 1]);
+                    for (Object id : related) {
+                        generator.writeObject(id);
+                    }
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+
+                @Override
+                public void close() throws IOException {
+                    generator.close();
+                }
+            };
+        }
+    },
+
+    /**
+     * RFC 4180 CSV with a header line, the related ids separated by spaces in the last column.
+     */
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8)) {
+        @Override
+        RecordWriter writer(String[] columns, OutputStream out) throws IOException {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(String.join(",", columns));
+            writer.write("\r\n");
+            return new RecordWriter() {
+                @Override
+                public void write(Object[] row, List<Object> related) throws IOException {
+                    for (int i = 0; i < row.length - 1; i++) {
+                        writer.write(field(row[i]));
+                        writer.write(',');
+                    }
+                    for (int i = 0; i < related.size(); i++) {
+                        if (i > 0) {
+                            writer.write(' ');
+                        }
+                        writer.write(String.valueOf(related.get(i)));
+                    }
+                    writer.write("\r\n");
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.flush();
+                }
+            };
+        }
+    };
+
+    private static final JsonFactory JSON = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final MediaType mediaType;
+
+    ExportFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    abstract RecordWriter writer(String[] columns, OutputStream out) throws IOException;
+
+    private static String field(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.pepzer.rest_jpa_test.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes exported records, closing it flushes what is buffered but leaves the target open.
+ */
+interface RecordWriter extends Closeable {
+
+    /**
+     * Writes the values of a row but the last one, then the related ids in place of it.
+     */
+    void write(Object[] row, List<Object> related) throws IOException;
+}
@@ -0,0 +1,69 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import java.util.Collections;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jpa.HibernateMetrics;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.handler.MappedInterceptor;
+
+/**
+ * Metrics the actuator does not bind on its own: the Hibernate statistics (sessions, statements,
+ * entity loads, cache hits) and the SQL statements of each request, see
+ * {@link StatementCountFilter}. The HTTP request and connection pool timers are auto-configured.
+ */
+@Configuration
+public class MetricsConfiguration implements SmartInitializingSingleton {
+
+    private final MeterRegistry registry;
+    private final ListableBeanFactory beanFactory;
+
+    public MetricsConfiguration(MeterRegistry registry, ListableBeanFactory beanFactory) {
+        this.registry = registry;
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * Wraps the data sources in a proxy that records the statements executed for each request. It
+     * runs after the pool metrics post processor, which needs the pool itself.
+     */
+    @Bean
+    public static BeanPostProcessor statementRecordingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource)) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create((DataSource) bean).name(beanName)
+                        .listener(new StatementRecorder()).build();
+            }
+        };
+    }
+
+    /**
+     * Picked up by every handler mapping, those of Spring Data REST included.
+     */
+    @Bean
+    public MappedInterceptor statementBudgetInterceptor() {
+        return new MappedInterceptor(null, new StatementBudgetInterceptor());
+    }
+
+    /**
+     * Bound once every singleton exists: a MeterBinder bean would be looked up when the registry is
+     * created, with the data source (for the pool metrics), before the entity manager factory.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        beanFactory.getBeansOfType(EntityManagerFactory.class).forEach((name, entityManagerFactory) ->
+                new HibernateMetrics(entityManagerFactory, name, Collections.emptyList()).bindTo(registry));
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every call of a Spring Data repository (repository.invocations, tagged with the repository
+ * interface, the method and the exception) and records the rows it returned (repository.rows) when
+ * the result is a collection, a page, a slice or an optional.
+ */
+@Aspect
+@Component
+public class RepositoryMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<Class<?>, String> repositories = new ConcurrentHashMap<>();
+
+    public RepositoryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(public * org.springframework.data.repository.Repository+.*(..))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = repositories.computeIfAbsent(joinPoint.getTarget().getClass(),
+                type -> AopProxyUtils.proxiedUserInterfaces(joinPoint.getTarget())[0].getSimpleName());
+        String method = joinPoint.getSignature().getName();
+        String exception = "none";
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            Object result = joinPoint.proceed();
+            int rows = rows(result);
+            if (rows >= 0) {
+                DistributionSummary.builder("repository.rows").tags("repository", repository, "method", method)
+                        .register(registry).record(rows);
+            }
+            return result;
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("repository.invocations")
+                    .tags("repository", repository, "method", method, "exception", exception).register(registry));
+        }
+    }
+
+    private static int rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletRequest;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * The SQL statements run for a request: how many, how long they took and, normalized (literals and
+ * IN lists replaced), how many times each one ran. Kept as a request attribute rather than a
+ * thread local, the statements of a handler run on the JDBC executor (jdbc.execution=async) are
+ * counted as well.
+ */
+public class RequestStatements {
+
+    static final String ATTRIBUTE = RequestStatements.class.getName();
+
+    private static final int MAX_DISTINCT = 20;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|\\b\\d+\\b");
+    private static final Pattern IN_LISTS = Pattern.compile("(?i)\\bin \\( ?\\?(?: ?, ?\\?)* ?\\)");
+
+    private final Map<String, Integer> statements = new LinkedHashMap<>();
+    private int count;
+    private long elapsedMs;
+    private String handler;
+    private int budget;
+
+    RequestStatements(String handler, int budget) {
+        this.handler = handler;
+        this.budget = budget;
+    }
+
+    /**
+     * The statements of a request, null if it did not go through {@link StatementCountFilter}.
+     */
+    public static RequestStatements of(ServletRequest request) {
+        return (RequestStatements) request.getAttribute(ATTRIBUTE);
+    }
+
+    static RequestStatements current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null
+                ? (RequestStatements) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                : null;
+    }
+
+    synchronized void add(String sql, long elapsedMs) {
+        count++;
+        this.elapsedMs += elapsedMs;
+        String normalized = normalize(sql);
+        if (statements.containsKey(normalized) || statements.size() < MAX_DISTINCT) {
+            statements.merge(normalized, 1, Integer::sum);
+        }
+    }
+
+    synchronized void setHandler(String handler) {
+        this.handler = handler;
+    }
+
+    synchronized void setBudget(int budget) {
+        this.budget = budget;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public synchronized String getHandler() {
+        return handler;
+    }
+
+    public synchronized int getBudget() {
+        return budget;
+    }
+
+    public synchronized boolean isWithinBudget() {
+        return count <= budget;
+    }
+
+    /**
+     * The handler, the totals and the statements, most frequent first.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder(handler).append(" ran ").append(count).append(" SQL statements in ")
+                .append(elapsedMs).append(" ms (budget ").append(budget).append(')');
+        statements.entrySet().stream().sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> text.append("\n  ").append(entry.getValue()).append(" x ").append(entry.getKey()));
+        return text.toString();
+    }
+
+    static String normalize(String sql) {
+        String normalized = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        normalized = LITERALS.matcher(normalized).replaceAll("?");
+        return IN_LISTS.matcher(normalized).replaceAll("in (...)");
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The most SQL statements a handler is expected to run, whatever the size of the page it
+ * returns. A request over the budget is logged with its statements, see
+ * {@link StatementCountFilter}; handlers without a budget get sql.statement-budget.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface StatementBudget {
+
+    int value();
+}
@@ -0,0 +1,33 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Names the {@link RequestStatements} after the handler of the request (AuthorController.getAuthors)
+ * and applies its {@link StatementBudget}.
+ */
+class StatementBudgetInterceptor extends HandlerInterceptorAdapter {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestStatements statements = RequestStatements.of(request);
+        if (statements == null) {
+            return true;
+        }
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod method = (HandlerMethod) handler;
+            statements.setHandler(method.getBeanType().getSimpleName() + "." + method.getMethod().getName());
+            StatementBudget budget = method.getMethodAnnotation(StatementBudget.class);
+            if (budget != null) {
+                statements.setBudget(budget.value());
+            }
+        } else {
+            statements.setHandler(handler.getClass().getSimpleName());
+        }
+        return true;
+    }
+}
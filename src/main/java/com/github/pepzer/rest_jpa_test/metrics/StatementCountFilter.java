@@ -0,0 +1,86 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTags;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Records the SQL statements of each request (http.server.requests.statements, tagged like
+ * http.server.requests with the method and the URI template), a jump in a route shows an N+1
+ * regression. A request over the {@link StatementBudget} of its handler (sql.statement-budget if it
+ * has none), or whose statements took longer than sql.slow-threshold-ms, is logged with its
+ * statements. Async requests are recorded when they complete.
+ */
+@Component
+public class StatementCountFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementCountFilter.class);
+
+    private final MeterRegistry registry;
+    private final int defaultBudget;
+    private final long slowThresholdMs;
+
+    public StatementCountFilter(MeterRegistry registry, @Value("${sql.statement-budget}") int defaultBudget,
+            @Value("${sql.slow-threshold-ms}") long slowThresholdMs) {
+        this.registry = registry;
+        this.defaultBudget = defaultBudget;
+        this.slowThresholdMs = slowThresholdMs;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestStatements statements = new RequestStatements(request.getRequestURI(), defaultBudget);
+        request.setAttribute(RequestStatements.ATTRIBUTE, statements);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, response, statements);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, response, statements);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, RequestStatements statements) {
+        DistributionSummary.builder("http.server.requests.statements")
+                .tags(Tags.of(WebMvcTags.method(request), WebMvcTags.uri(request, response))).register(registry)
+                .record(statements.getCount());
+        if (!statements.isWithinBudget() || statements.getElapsedMs() > slowThresholdMs) {
+            LOGGER.warn("{}", statements);
+        }
+    }
+}
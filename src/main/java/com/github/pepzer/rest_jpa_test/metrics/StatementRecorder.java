@@ -0,0 +1,33 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import java.util.List;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+/**
+ * Adds the statements executed through the proxied data source to the {@link RequestStatements}
+ * of the current request. Statements outside of a request (migrations, the search index rebuild)
+ * are ignored.
+ */
+class StatementRecorder implements QueryExecutionListener {
+
+    @Override
+    public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+        RequestStatements statements = RequestStatements.current();
+        if (statements == null) {
+            return;
+        }
+        // A batch is one execution of several statements, its time is charged to the first one
+        long elapsedMs = execution.getElapsedTime();
+        for (QueryInfo query : queries) {
+            statements.add(query.getQuery(), elapsedMs);
+            elapsedMs = 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.pepzer.rest_jpa_test.projection;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Id and name of an author linked to a book, built by a constructor query.
+ */
+public class AuthorSummary {
+    private final Long bookId;
+    private final Long id;
+    private final String firstName;
+    private final String lastName;
+
+    public AuthorSummary(Long bookId, Long id, String firstName, String lastName) {
+        this.bookId = bookId;
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    @JsonIgnore
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+}
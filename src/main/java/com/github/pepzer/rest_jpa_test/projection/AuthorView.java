@@ -0,0 +1,35 @@
+package com.github.pepzer.rest_jpa_test.projection;
+
+/**
+ * The columns of an author shown by the listings, built by a constructor query: no managed
+ * entity, snapshot or collection proxy is created for it.
+ */
+public class AuthorView {
+    private final Long id;
+    private final Long version;
+    private final String firstName;
+    private final String lastName;
+
+    public AuthorView(Long id, Long version, String firstName, String lastName) {
+        this.id = id;
+        this.version = version;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+}
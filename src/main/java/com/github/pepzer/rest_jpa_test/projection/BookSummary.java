@@ -0,0 +1,31 @@
+package com.github.pepzer.rest_jpa_test.projection;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Id and title of a book linked to an author, built by a constructor query.
+ */
+public class BookSummary {
+    private final Long authorId;
+    private final Long id;
+    private final String title;
+
+    public BookSummary(Long authorId, Long id, String title) {
+        this.authorId = authorId;
+        this.id = id;
+        this.title = title;
+    }
+
+    @JsonIgnore
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.pepzer.rest_jpa_test.projection;
+
+/**
+ * The columns of a book shown by the listings, see {@link AuthorView}.
+ */
+public class BookView {
+    private final Long id;
+    private final Long version;
+    private final String isbn;
+    private final String title;
+
+    public BookView(Long id, Long version, String isbn, String title) {
+        this.id = id;
+        this.version = version;
+        this.isbn = isbn;
+        this.title = title;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Links between authors and books written directly to author_book, see {@link AuthorBookLinksImpl}.
+ */
+public interface AuthorBookLinks {
+
+    /**
+     * Links the books to the author, the links that already exist are left as they are. A link
+     * inserted concurrently is retried once, unless the call joined a transaction of the caller.
+     *
+     * @return what was linked, empty if the author does not exist
+     */
+    Optional<LinkReport> linkBooks(long authorId, Collection<Long> bookIds);
+}
@@ -0,0 +1,196 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import com.github.pepzer.rest_jpa_test.cache.ResponseCache;
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Links with an insert-if-absent of the missing author_book rows: neither the author nor its books
+ * are loaded, and a link that exists is not written again. The author's version is still
+ * incremented when a link is added, as when its books were changed through the entity.
+ * <p>
+ * The statements run on the connection of the session, behind Hibernate's back: the cached
+ * author, its cached books and the cached authors of the linked books are evicted here, and so
+ * are the cached queries on authors (their version changed) and, once committed, the cached
+ * responses that show them.
+ */
+class AuthorBookLinksImpl implements AuthorBookLinks {
+
+    private static final String AUTHOR_BOOKS = Author.class.getName() + ".books";
+    private static final String BOOK_AUTHORS = Book.class.getName() + ".authors";
+    private static final String[] AUTHORS_SPACE = { "authors" };
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transaction;
+    private final ResponseCache responseCache;
+
+    AuthorBookLinksImpl(PlatformTransactionManager transactionManager, ResponseCache responseCache) {
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public Optional<LinkReport> linkBooks(long authorId, Collection<Long> bookIds) {
+        Set<Long> requested = new LinkedHashSet<>(bookIds);
+        boolean joined = TransactionSynchronizationManager.isActualTransactionActive();
+        try {
+            return transaction.execute(status -> link(authorId, requested));
+        } catch (ConstraintViolationException e) {
+            // The transaction of the caller is rollback-only now, the caller retries it as a whole
+            if (joined) {
+                throw e;
+            }
+            // A concurrent request inserted one of the links first, it is found on the second try
+            return transaction.execute(status -> link(authorId, requested));
+        }
+    }
+
+    private Optional<LinkReport> link(long authorId, Set<Long> bookIds) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        LinkReport report = new LinkReport();
+        int inserted = session.doReturningWork(connection -> {
+            Map<Long, Boolean> books = bookIds.isEmpty() ? Collections.emptyMap()
+                    : findBooks(connection, authorId, bookIds);
+            if (books.isEmpty() && !authorExists(connection, authorId)) {
+                return -1;
+            }
+            for (Long id : bookIds) {
+                Boolean linked = books.get(id);
+                if (linked == null) {
+                    report.getUnknown().add(id);
+                } else if (linked) {
+                    report.getAlreadyLinked().add(id);
+                } else {
+                    report.getLinked().add(id);
+                }
+            }
+            return report.getLinked().isEmpty() ? 0 : insertLinks(connection, authorId, report.getLinked());
+        });
+        if (inserted < 0) {
+            return Optional.empty();
+        }
+        if (inserted > 0) {
+            evict(session, authorId, report.getLinked());
+        }
+        return Optional.of(report);
+    }
+
+    /**
+     * The books among the given ids, mapped to whether they are linked to the author, nothing if the
+     * author does not exist.
+     */
+    private static Map<Long, Boolean> findBooks(Connection connection, long authorId, Set<Long> bookIds)
+            throws SQLException {
+        String sql = "SELECT b.id, ab.book_id FROM authors a JOIN books b ON b.id IN (" + placeholders(bookIds.size())
+                + ") LEFT JOIN author_book ab ON ab.author_id = a.id AND ab.book_id = b.id WHERE a.id = ?";
+        Map<Long, Boolean> books = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = bind(statement, 1, bookIds);
+            statement.setLong(index, authorId);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    books.put(rows.getLong(1), rows.getObject(2) != null);
+                }
+            }
+        }
+        return books;
+    }
+
+    private static boolean authorExists(Connection connection, long authorId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM authors WHERE id = ?")) {
+            statement.setLong(1, authorId);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next();
+            }
+        }
+    }
+
+    /**
+     * Inserts the links that are still missing, both ids checked by the same statement, and
+     * increments the author's version if any was.
+     */
+    private static int insertLinks(Connection connection, long authorId, List<Long> bookIds) throws SQLException {
+        String sql = "INSERT INTO author_book (author_id, book_id) SELECT a.id, b.id FROM authors a JOIN books b"
+                + " ON b.id IN (" + placeholders(bookIds.size()) + ") WHERE a.id = ? AND NOT EXISTS"
+                + " (SELECT 1 FROM author_book ab WHERE ab.author_id = a.id AND ab.book_id = b.id)";
+        int inserted;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = bind(statement, 1, bookIds);
+            statement.setLong(index, authorId);
+            inserted = statement.executeUpdate();
+        }
+        if (inserted > 0) {
+            try (PreparedStatement statement = connection
+                    .prepareStatement("UPDATE authors SET version = version + 1 WHERE id = ?")) {
+                statement.setLong(1, authorId);
+                statement.executeUpdate();
+            }
+        }
+        return inserted;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static int bind(PreparedStatement statement, int index, Collection<Long> ids) throws SQLException {
+        for (Long id : ids) {
+            statement.setLong(index++, id);
+        }
+        return index;
+    }
+
+    /**
+     * Evicts once now and again after the transaction completes, so a concurrent reader cannot put
+     * back the old state, as a bulk statement run through Hibernate would.
+     */
+    private void evict(SessionImplementor session, long authorId, List<Long> bookIds) {
+        List<Long> books = new ArrayList<>(bookIds);
+        Runnable eviction = () -> {
+            org.hibernate.Cache cache = session.getFactory().getCache();
+            cache.evictEntity(Author.class, authorId);
+            cache.evictCollection(AUTHOR_BOOKS, authorId);
+            books.forEach(id -> cache.evictCollection(BOOK_AUTHORS, id));
+        };
+        eviction.run();
+        UpdateTimestampsCache timestamps = session.getFactory().getCache().getUpdateTimestampsCache();
+        if (timestamps != null) {
+            timestamps.preInvalidate(AUTHORS_SPACE, session);
+        }
+        session.getActionQueue().registerProcess((success, completed) -> {
+            eviction.run();
+            if (timestamps != null) {
+                timestamps.invalidate(AUTHORS_SPACE, completed);
+            }
+            if (success) {
+                responseCache.invalidate(Collections.singleton(authorId), books);
+            }
+        });
+    }
+}
@@ -1,12 +1,152 @@
 package com.github.pepzer.rest_jpa_test.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import com.github.pepzer.rest_jpa_test.cache.SingleFlight;
 import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.projection.AuthorView;
+import com.github.pepzer.rest_jpa_test.projection.BookSummary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface AuthorRepository extends JpaRepository<Author, Long> {
-    @Query(value = "SELECT * FROM authors WHERE lastname = ?1", countQuery = "SELECT count(*) FROM authors WHERE lastname = ?1", nativeQuery = true)
+public interface AuthorRepository extends JpaRepository<Author, Long>, AuthorBookLinks {
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT a FROM Author a WHERE a.lastName = ?1", countQuery = "SELECT count(a) FROM Author a WHERE a.lastName = ?1")
     Page<Author> findByLastName(String lastName, Pageable pageable);
-}
\ No newline at end of file
+
+    // Listings read the displayed columns only, in read-only transactions
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a", countQuery = "SELECT count(a) FROM Author a")
+    Page<AuthorView> findAllViews(Pageable pageable);
+
+    @SingleFlight
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.lastName = ?1", countQuery = "SELECT count(a) FROM Author a WHERE a.lastName = ?1")
+    Page<AuthorView> findViewsByLastName(String lastName, Pageable pageable);
+
+    @SingleFlight
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.id = ?1")
+    Optional<AuthorView> findViewById(Long id);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.id IN ?1")
+    List<AuthorView> findViewsByIdIn(Collection<Long> ids);
+
+    // Slices skip the count query, they only tell whether there is a next page
+    @SingleFlight
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.lastName = ?1")
+    Slice<AuthorView> findSliceByLastName(String lastName, Pageable pageable);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a")
+    Slice<AuthorView> findAllSlice(Pageable pageable);
+
+    // Versions only, to answer conditional requests without loading the entities
+    @SingleFlight
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT a.id AS id, a.version AS version FROM Author a WHERE a.id = ?1")
+    Optional<EntityVersion> findVersionById(Long id);
+
+    @RestResource(exported = false)
+    @Query(value = "SELECT a.id AS id, a.version AS version FROM Author a", countQuery = "SELECT count(a) FROM Author a")
+    Page<EntityVersion> findAllVersions(Pageable pageable);
+
+    @RestResource(exported = false)
+    @Query(value = "SELECT a.id FROM Author a", countQuery = "SELECT count(a) FROM Author a")
+    Page<Long> findAllIds(Pageable pageable);
+
+    @RestResource(exported = false)
+    @EntityGraph("Author.books")
+    @Query(value = "SELECT a FROM Author a WHERE a.id IN ?1")
+    List<Author> findWithBooksByIdIn(Collection<Long> ids);
+
+    // Keyset pagination, the Pageable only limits the rows (no count query)
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.id > ?1 ORDER BY a.id")
+    List<AuthorView> findByIdAfter(long id, Pageable limit);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.id < ?1 ORDER BY a.id DESC")
+    List<AuthorView> findByIdBefore(long id, Pageable limit);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.lastName > ?1 OR (a.lastName = ?1 AND a.id > ?2) ORDER BY a.lastName, a.id")
+    List<AuthorView> findByLastNameAfter(String lastName, long id, Pageable limit);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorView(a.id, a.version, a.firstName, a.lastName) FROM Author a WHERE a.lastName < ?1 OR (a.lastName = ?1 AND a.id < ?2) ORDER BY a.lastName DESC, a.id DESC")
+    List<AuthorView> findByLastNameBefore(String lastName, long id, Pageable limit);
+
+    // Forward-only scalar rows for the export, an author and one of its books (null when it has
+    // none), ordered by author; the caller must hold a transaction and close the stream
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT a.id, a.firstName, a.lastName, b.id FROM Author a LEFT JOIN a.books b ORDER BY a.id, b.id")
+    Stream<Object[]> streamWithBookIds();
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT a.id, a.firstName, a.lastName FROM Author a")
+    Stream<Object[]> streamNames();
+
+    // Compact rows for the books of the given authors, no entity is loaded
+    @RestResource(exported = false)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookSummary(a.id, b.id, b.title) FROM Author a JOIN a.books b WHERE a.id IN ?1 ORDER BY b.title, b.id")
+    List<BookSummary> findBookSummaries(Collection<Long> authorIds);
+
+    /**
+     * A page of authors with their books initialized, in three statements (count, page of ids,
+     * fetch join on the ids) whatever the page size. Paging on the ids keeps LIMIT/OFFSET in the
+     * database, a fetch join paged directly would be paged in memory by Hibernate.
+     */
+    default Page<Author> findAllWithBooks(Pageable pageable) {
+        Page<Long> ids = findAllIds(pageable);
+        if (!ids.hasContent()) {
+            return ids.map(id -> null);
+        }
+        Map<Long, Author> authors = findWithBooksByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(Author::getId, Function.identity(), (a, b) -> a));
+        return ids.map(authors::get);
+    }
+
+    /**
+     * The views of the authors with the given ids, in the same order, null for an unknown id. One
+     * IN query per 500 ids, in one read-only transaction.
+     */
+    @Transactional(readOnly = true)
+    default List<AuthorView> findViewsByIdInOrder(List<Long> ids) {
+        Map<Long, AuthorView> authors = InChunks.lookup(ids, this::findViewsByIdIn, AuthorView::getId);
+        return ids.stream().map(authors::get).collect(Collectors.toList());
+    }
+}
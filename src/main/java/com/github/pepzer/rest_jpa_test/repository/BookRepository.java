@@ -1,11 +1,158 @@
 package com.github.pepzer.rest_jpa_test.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import com.github.pepzer.rest_jpa_test.cache.SingleFlight;
 import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.projection.AuthorSummary;
+import com.github.pepzer.rest_jpa_test.projection.BookView;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface BookRepository extends JpaRepository<Book, Long> {
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
     @Query(value = "SELECT b FROM Book b WHERE b.ISBN = ?1")
     Optional<Book> findByIsbn(String isbn);
-}
\ No newline at end of file
+
+    @RestResource(exported = false)
+    @Query(value = "SELECT b FROM Book b WHERE b.ISBN IN ?1")
+    List<Book> findByIsbnIn(Collection<String> isbns);
+
+    // Listings read the displayed columns only, in read-only transactions
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b", countQuery = "SELECT count(b) FROM Book b")
+    Page<BookView> findAllViews(Pageable pageable);
+
+    @SingleFlight
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.id = ?1")
+    Optional<BookView> findViewById(Long id);
+
+    @SingleFlight
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.ISBN = ?1")
+    Optional<BookView> findViewByIsbn(String isbn);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.id IN ?1")
+    List<BookView> findViewsByIdIn(Collection<Long> ids);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.ISBN IN ?1")
+    List<BookView> findViewsByIsbnIn(Collection<String> isbns);
+
+    // Slices skip the count query, they only tell whether there is a next page
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b")
+    Slice<BookView> findAllSlice(Pageable pageable);
+
+    // Versions only, to answer conditional requests without loading the entities
+    @SingleFlight
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT b.id AS id, b.version AS version FROM Book b WHERE b.id = ?1")
+    Optional<EntityVersion> findVersionById(Long id);
+
+    @SingleFlight
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT b.id AS id, b.version AS version FROM Book b WHERE b.ISBN = ?1")
+    Optional<EntityVersion> findVersionByIsbn(String isbn);
+
+    @RestResource(exported = false)
+    @Query(value = "SELECT b.id AS id, b.version AS version FROM Book b", countQuery = "SELECT count(b) FROM Book b")
+    Page<EntityVersion> findAllVersions(Pageable pageable);
+
+    @RestResource(exported = false)
+    @Query(value = "SELECT b.id FROM Book b", countQuery = "SELECT count(b) FROM Book b")
+    Page<Long> findAllIds(Pageable pageable);
+
+    @RestResource(exported = false)
+    @EntityGraph("Book.authors")
+    @Query(value = "SELECT b FROM Book b WHERE b.id IN ?1")
+    List<Book> findWithAuthorsByIdIn(Collection<Long> ids);
+
+    // Keyset pagination, the Pageable only limits the rows (no count query)
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.id > ?1 ORDER BY b.id")
+    List<BookView> findByIdAfter(long id, Pageable limit);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.id < ?1 ORDER BY b.id DESC")
+    List<BookView> findByIdBefore(long id, Pageable limit);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.title > ?1 OR (b.title = ?1 AND b.id > ?2) ORDER BY b.title, b.id")
+    List<BookView> findByTitleAfter(String title, long id, Pageable limit);
+
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.BookView(b.id, b.version, b.ISBN, b.title) FROM Book b WHERE b.title < ?1 OR (b.title = ?1 AND b.id < ?2) ORDER BY b.title DESC, b.id DESC")
+    List<BookView> findByTitleBefore(String title, long id, Pageable limit);
+
+    // Forward-only scalar rows for the export, a book and one of its authors (null when it has
+    // none), ordered by book; the caller must hold a transaction and close the stream
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT b.id, b.ISBN, b.title, a.id FROM Book b LEFT JOIN b.authors a ORDER BY b.id, a.id")
+    Stream<Object[]> streamWithAuthorIds();
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT b.id, b.title FROM Book b")
+    Stream<Object[]> streamTitles();
+
+    // Compact rows for the authors of the given books, no entity is loaded
+    @RestResource(exported = false)
+    @Query(value = "SELECT new com.github.pepzer.rest_jpa_test.projection.AuthorSummary(b.id, a.id, a.firstName, a.lastName) FROM Book b JOIN b.authors a WHERE b.id IN ?1 ORDER BY a.lastName, a.firstName, a.id")
+    List<AuthorSummary> findAuthorSummaries(Collection<Long> bookIds);
+
+    /**
+     * A page of books with their authors initialized, see AuthorRepository.findAllWithBooks.
+     */
+    default Page<Book> findAllWithAuthors(Pageable pageable) {
+        Page<Long> ids = findAllIds(pageable);
+        if (!ids.hasContent()) {
+            return ids.map(id -> null);
+        }
+        Map<Long, Book> books = findWithAuthorsByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity(), (a, b) -> a));
+        return ids.map(books::get);
+    }
+
+    /**
+     * The views of the books with the given ISBNs, in the same order, null for an unknown ISBN, see
+     * AuthorRepository.findViewsByIdInOrder.
+     */
+    @Transactional(readOnly = true)
+    default List<BookView> findViewsByIsbnInOrder(List<String> isbns) {
+        Map<String, BookView> books = InChunks.lookup(isbns, this::findViewsByIsbnIn, BookView::getIsbn);
+        return isbns.stream().map(books::get).collect(Collectors.toList());
+    }
+}
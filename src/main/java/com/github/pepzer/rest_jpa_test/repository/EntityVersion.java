@@ -0,0 +1,11 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+/**
+ * Projection on the id and the @Version of an entity.
+ */
+public interface EntityVersion {
+
+    Long getId();
+
+    Long getVersion();
+}
@@ -0,0 +1,31 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Runs an IN query over a long list of keys a chunk at a time: every statement binds at most
+ * {@link #SIZE} parameters, and Hibernate caches a plan per distinct list length.
+ */
+final class InChunks {
+
+    static final int SIZE = 500;
+
+    private InChunks() {
+    }
+
+    /**
+     * The rows found for the keys, by key.
+     */
+    static <K, V> Map<K, V> lookup(List<K> keys, Function<List<K>, List<V>> query, Function<V, K> keyOf) {
+        Map<K, V> found = new HashMap<>();
+        for (int from = 0; from < keys.size(); from += SIZE) {
+            for (V row : query.apply(keys.subList(from, Math.min(from + SIZE, keys.size())))) {
+                found.putIfAbsent(keyOf.apply(row), row);
+            }
+        }
+        return found;
+    }
+}
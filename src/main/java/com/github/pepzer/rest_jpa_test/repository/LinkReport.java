@@ -0,0 +1,26 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of linking books to an author: the ids of the books linked, of those that already were
+ * and of those that do not exist.
+ */
+public class LinkReport {
+    private final List<Long> linked = new ArrayList<>();
+    private final List<Long> alreadyLinked = new ArrayList<>();
+    private final List<Long> unknown = new ArrayList<>();
+
+    public List<Long> getLinked() {
+        return linked;
+    }
+
+    public List<Long> getAlreadyLinked() {
+        return alreadyLinked;
+    }
+
+    public List<Long> getUnknown() {
+        return unknown;
+    }
+}
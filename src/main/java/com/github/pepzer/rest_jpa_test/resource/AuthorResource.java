@@ -1,13 +1,23 @@
 package com.github.pepzer.rest_jpa_test.resource;
 
-import com.github.pepzer.rest_jpa_test.entity.Author;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.pepzer.rest_jpa_test.projection.AuthorView;
 import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.core.Relation;
 
+// Fixed rels, the default provider pluralizes the class name with regular expressions for every item
+@Relation(value = "authorResource", collectionRelation = "authorResources")
 public class AuthorResource extends ResourceSupport {
     String firstName;
     String lastName;
+    Map<String, List<?>> embedded = new LinkedHashMap<>();
 
-    public AuthorResource(Author author) {
+    public AuthorResource(AuthorView author) {
         firstName = author.getFirstName();
         lastName = author.getLastName();
     }
@@ -19,4 +29,14 @@ public class AuthorResource extends ResourceSupport {
     public String getLastName() {
         return lastName;
     }
+
+    @JsonProperty("_embedded")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public Map<String, List<?>> getEmbedded() {
+        return embedded;
+    }
+
+    public void embed(String rel, List<?> content) {
+        embedded.put(rel, content);
+    }
 }
\ No newline at end of file
@@ -1,14 +1,24 @@
 package com.github.pepzer.rest_jpa_test.resource;
 
-import com.github.pepzer.rest_jpa_test.entity.Book;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.pepzer.rest_jpa_test.projection.BookView;
 import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.core.Relation;
 
+// Fixed rels, the default provider pluralizes the class name with regular expressions for every item
+@Relation(value = "bookResource", collectionRelation = "bookResources")
 public class BookResource extends ResourceSupport {
     String ISBN;
     String title;
+    Map<String, List<?>> embedded = new LinkedHashMap<>();
 
-    public BookResource(Book book) {
-        ISBN = book.getISBN();
+    public BookResource(BookView book) {
+        ISBN = book.getIsbn();
         title = book.getTitle();
     }
 
@@ -19,4 +29,14 @@ public class BookResource extends ResourceSupport {
     public String getTitle() {
         return title;
     }
+
+    @JsonProperty("_embedded")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public Map<String, List<?>> getEmbedded() {
+        return embedded;
+    }
+
+    public void embed(String rel, List<?> content) {
+        embedded.put(rel, content);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.github.pepzer.rest_jpa_test.search;
+
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Text indexes of the author names and of the book titles. They are loaded when the
+ * application is ready and then follow the inserts, updates and deletes of the entities,
+ * applied once the transaction has committed. Rows written without Hibernate (SQL scripts,
+ * JDBC) are only picked up by {@link #rebuild()}.
+ */
+@Component
+public class CatalogueSearchIndex implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final AuthorRepository authorRepository;
+    private final BookRepository bookRepository;
+    private final TransactionTemplate readOnly;
+
+    private volatile TextIndex authors = new TextIndex();
+    private volatile TextIndex books = new TextIndex();
+
+    public CatalogueSearchIndex(EntityManagerFactory entityManagerFactory, AuthorRepository authorRepository,
+            BookRepository bookRepository, PlatformTransactionManager transactionManager) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.authorRepository = authorRepository;
+        this.bookRepository = bookRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    /**
+     * Reloads both indexes from the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        TextIndex authorIndex = new TextIndex();
+        TextIndex bookIndex = new TextIndex();
+        readOnly.execute(status -> {
+            try (Stream<Object[]> rows = authorRepository.streamNames()) {
+                rows.forEach(row -> authorIndex.put((Long) row[0], name((String) row[1], (String) row[2])));
+            }
+            try (Stream<Object[]> rows = bookRepository.streamTitles()) {
+                rows.forEach(row -> bookIndex.put((Long) row[0], (String) row[1]));
+            }
+            return null;
+        });
+        authors = authorIndex;
+        books = bookIndex;
+    }
+
+    public Page<Long> searchAuthors(String query, Pageable pageable) {
+        return authors.search(query, pageable);
+    }
+
+    public Page<Long> searchBooks(String query, Pageable pageable) {
+        return books.search(query, pageable);
+    }
+
+    /**
+     * Drops authors deleted without Hibernate, the caller applies it once their deletion has committed.
+     */
+    public void removeAuthors(Collection<Long> ids) {
+        ids.forEach(authors::remove);
+    }
+
+    public void removeBooks(Collection<Long> ids) {
+        ids.forEach(books::remove);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        index(event, event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        index(event, event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Author) {
+            Long id = ((Author) entity).getId();
+            afterCommit(event, () -> authors.remove(id));
+        } else if (entity instanceof Book) {
+            Long id = ((Book) entity).getId();
+            afterCommit(event, () -> books.remove(id));
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // Still abstract in Hibernate 5.2, which only calls the method above
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private void index(AbstractEvent event, Object entity) {
+        if (entity instanceof Author) {
+            Author author = (Author) entity;
+            Long id = author.getId();
+            String name = name(author.getFirstName(), author.getLastName());
+            afterCommit(event, () -> authors.put(id, name));
+        } else if (entity instanceof Book) {
+            Book book = (Book) entity;
+            Long id = book.getId();
+            String title = book.getTitle();
+            afterCommit(event, () -> books.put(id, title));
+        }
+    }
+
+    private static void afterCommit(AbstractEvent event, Runnable change) {
+        event.getSession().getActionQueue().registerProcess((success, session) -> {
+            if (success) {
+                change.run();
+            }
+        });
+    }
+
+    private static String name(String firstName, String lastName) {
+        return firstName + " " + lastName;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.pepzer.rest_jpa_test.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * In-memory inverted index of short texts (names, titles) by id. The texts are split into
+ * lower case tokens without accents, kept in a sorted map so that a prefix is a range lookup.
+ * <p>
+ * Every term of a query must match a token of a text, exactly or as a prefix. Matches are ranked
+ * by the number of exact token matches, then by the length of the text (fewer tokens first),
+ * then by id. Reads are lock free, writes are serialized.
+ */
+public class TextIndex {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final ConcurrentSkipListMap<String, Set<Long>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Long, String[]> documents = new ConcurrentHashMap<>();
+
+    public synchronized void put(long id, String text) {
+        remove(id);
+        String[] tokens = tokens(text);
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        documents.put(id, tokens);
+    }
+
+    public synchronized void remove(long id) {
+        String[] tokens = documents.remove(id);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<Long> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * A page of the ids of the matching texts, best match first.
+     */
+    public Page<Long> search(String query, Pageable pageable) {
+        String[] terms = tokens(query);
+        if (terms.length == 0) {
+            return new PageImpl<>(Collections.emptyList(), pageable, 0);
+        }
+        // Longer terms first, they tend to match fewer texts so the candidates shrink faster
+        Arrays.sort(terms, Comparator.comparingInt(String::length).reversed());
+
+        Map<Long, Integer> scores = null;
+        for (String term : terms) {
+            Map<Long, Integer> termScores = new HashMap<>();
+            for (Map.Entry<String, Set<Long>> posting : postings.subMap(term, term + Character.MAX_VALUE).entrySet()) {
+                int score = posting.getKey().length() == term.length() ? 1 : 0;
+                for (Long id : posting.getValue()) {
+                    if (scores == null || scores.containsKey(id)) {
+                        termScores.merge(id, score, Math::max);
+                    }
+                }
+            }
+            if (scores != null) {
+                Map<Long, Integer> previous = scores;
+                termScores.replaceAll((id, score) -> score + previous.get(id));
+            }
+            scores = termScores;
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        return new PageImpl<>(top(scores, pageable), pageable, scores.size());
+    }
+
+    private List<Long> top(Map<Long, Integer> scores, Pageable pageable) {
+        long end = pageable.getOffset() + pageable.getPageSize();
+        if (pageable.getOffset() >= scores.size()) {
+            return Collections.emptyList();
+        }
+        Comparator<Map.Entry<Long, Integer>> rank = Comparator
+                .comparing((Map.Entry<Long, Integer> entry) -> entry.getValue()).reversed()
+                .thenComparingInt(entry -> length(entry.getKey())).thenComparing(Map.Entry::getKey);
+
+        // Keep only the best offset + size matches, the worst of them on top of the heap
+        PriorityQueue<Map.Entry<Long, Integer>> best = new PriorityQueue<>(rank.reversed());
+        for (Map.Entry<Long, Integer> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > end) {
+                best.poll();
+            }
+        }
+        List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(best);
+        ranked.sort(rank);
+
+        List<Long> ids = new ArrayList<>(pageable.getPageSize());
+        for (int i = (int) pageable.getOffset(); i < ranked.size(); i++) {
+            ids.add(ranked.get(i).getKey());
+        }
+        return ids;
+    }
+
+    private int length(Long id) {
+        String[] tokens = documents.get(id);
+        return tokens != null ? tokens.length : Integer.MAX_VALUE;
+    }
+
+    static String[] tokens(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String plain = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return Arrays.stream(SEPARATORS.split(plain.toLowerCase(Locale.ROOT))).filter(token -> !token.isEmpty())
+                .distinct().toArray(String[]::new);
+    }
+}
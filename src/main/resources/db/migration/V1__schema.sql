@@ -0,0 +1,37 @@
+-- Ids are allocated by Hibernate in blocks of 50 (pooled optimizer), see @SequenceGenerator
+CREATE SEQUENCE author_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE book_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE authors (
+    id BIGINT NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL,
+    firstname VARCHAR(100) NOT NULL,
+    lastname VARCHAR(100) NOT NULL,
+    CONSTRAINT pk_authors PRIMARY KEY (id)
+);
+
+-- findByLastName and the keyset pages sorted by lastName, the id breaks ties
+CREATE INDEX ix_authors_lastname_id ON authors (lastname, id);
+
+CREATE TABLE books (
+    id BIGINT NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL,
+    isbn VARCHAR(255) NOT NULL,
+    title VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_books PRIMARY KEY (id),
+    CONSTRAINT uk_books_isbn UNIQUE (isbn)
+);
+
+-- Keyset pages sorted by title
+CREATE INDEX ix_books_title_id ON books (title, id);
+
+-- The primary key serves Author.books (author_id first), the second index Book.authors
+CREATE TABLE author_book (
+    author_id BIGINT NOT NULL,
+    book_id BIGINT NOT NULL,
+    CONSTRAINT pk_author_book PRIMARY KEY (author_id, book_id),
+    CONSTRAINT fk_author_book_author FOREIGN KEY (author_id) REFERENCES authors (id),
+    CONSTRAINT fk_author_book_book FOREIGN KEY (book_id) REFERENCES books (id)
+);
+
+CREATE INDEX ix_author_book_book_id ON author_book (book_id, author_id);
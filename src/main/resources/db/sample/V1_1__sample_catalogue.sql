@@ -0,0 +1,18 @@
+-- Sample catalogue
+INSERT INTO authors (id, firstname, lastname, version) VALUES (1, 'Name1', 'Surname1', 0);
+INSERT INTO authors (id, firstname, lastname, version) VALUES (2, 'Name2', 'Surname2', 0);
+INSERT INTO authors (id, firstname, lastname, version) VALUES (3, 'Name3', 'Surname3', 0);
+INSERT INTO authors (id, firstname, lastname, version) VALUES (4, 'Name4', 'Surname4', 0);
+
+INSERT INTO books (id, isbn, title, version) VALUES (1, '0123456789012', 'Title1', 0);
+INSERT INTO books (id, isbn, title, version) VALUES (2, '0123456789013', 'Title2', 0);
+INSERT INTO books (id, isbn, title, version) VALUES (3, '0123456789014', 'Title3', 0);
+
+INSERT INTO author_book (author_id, book_id) VALUES (1, 1);
+INSERT INTO author_book (author_id, book_id) VALUES (1, 2);
+INSERT INTO author_book (author_id, book_id) VALUES (2, 2);
+INSERT INTO author_book (author_id, book_id) VALUES (3, 3);
+
+-- Move the sequences past the ids above
+ALTER SEQUENCE author_seq RESTART WITH 101;
+ALTER SEQUENCE book_seq RESTART WITH 101;
@@ -16,31 +16,59 @@
 
 package com.github.pepzer.rest_jpa_test;
 
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcBuilderCustomizer;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import com.github.pepzer.rest_jpa_test.bulk.BulkDeleter;
+import com.github.pepzer.rest_jpa_test.metrics.RequestStatements;
 import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
 import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+import com.jayway.jsonpath.JsonPath;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
 @AutoConfigureMockMvc
 public class ApplicationTests {
 
+	/**
+	 * Every request of these tests must stay within the statement budget of its handler.
+	 */
+	@TestConfiguration
+	static class StatementBudgets {
+
+		@Bean
+		MockMvcBuilderCustomizer withinStatementBudget() {
+			return builder -> builder.alwaysExpect(result -> {
+				RequestStatements statements = RequestStatements.of(result.getRequest());
+				assertTrue(statements.toString(), statements.isWithinBudget());
+			});
+		}
+	}
+
 	@Autowired
 	private MockMvc mockMvc;
 
@@ -50,10 +78,13 @@ public class ApplicationTests {
 	@Autowired
 	private BookRepository bookRepository;
 
+	@Autowired
+	private BulkDeleter bulkDeleter;
+
 	@Before
 	public void deleteAllBeforeTests() throws Exception {
-		authorRepository.deleteAll();
-		bookRepository.deleteAll();
+		bulkDeleter.deleteAuthors(Specification.where(null));
+		bulkDeleter.deleteBooks(Specification.where(null));
 	}
 
 	@Test
@@ -105,6 +136,38 @@ public class ApplicationTests {
 				.andExpect(jsonPath("$.title").value("The Hobbit"));
 	}
 
+	@Test
+	public void shouldAnswerConditionalRequests() throws Exception {
+
+		String location = mockMvc
+				.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"firstName\": \"Frodo\", \"lastName\":\"Baggins\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+
+		String etag = mockMvc.perform(get(location)).andExpect(status().isOk()).andExpect(header().string("ETag", "\"0\""))
+				.andReturn().getResponse().getHeader("ETag");
+		mockMvc.perform(get(location).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", etag)).andExpect(content().string(""));
+
+		String pageTag = mockMvc.perform(get("/authors")).andExpect(status().isOk())
+				.andExpect(header().exists("ETag")).andReturn().getResponse().getHeader("ETag");
+		mockMvc.perform(get("/authors").header(HttpHeaders.IF_NONE_MATCH, pageTag))
+				.andExpect(status().isNotModified());
+
+		// Linking a book updates the owning side of the association, hence its version
+		String bookLocation = mockMvc
+				.perform(post("/books").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"isbn\": \"0123401234012\", \"title\":\"The Hobbit\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+		mockMvc.perform(put(location + "/books/" + bookLocation.substring(bookLocation.lastIndexOf('/') + 1)))
+				.andExpect(status().isCreated());
+
+		mockMvc.perform(get(location).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"1\"")).andExpect(jsonPath("$.firstName").value("Frodo"));
+		mockMvc.perform(get("/authors").header(HttpHeaders.IF_NONE_MATCH, pageTag)).andExpect(status().isOk())
+				.andExpect(header().string("ETag", not(pageTag)));
+	}
+
 	@Test
 	public void shouldRetrieveAuthorBook() throws Exception {
 		// Insert an author
@@ -179,6 +242,82 @@ public class ApplicationTests {
 				.andExpect(jsonPath("$._embedded.books[0].title").value("The Hobbit"));
 	}
 
+	@Test
+	public void shouldLinkIdempotentlyAndInBatch() throws Exception {
+
+		String lines = "{\"type\":\"author\",\"firstName\":\"John\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234013\",\"title\":\"The Lord of the Rings\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234014\",\"title\":\"The Silmarillion\"}\n";
+		mockMvc.perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").content(lines))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.errors", hasSize(0)));
+		long authorId = authorRepository.findAll().get(0).getId();
+		long[] bookIds = bookRepository.findAll().stream().mapToLong(book -> book.getId()).sorted().toArray();
+		String authorLocation = "/authors/" + authorId;
+
+		mockMvc.perform(get(authorLocation + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books", hasSize(0)));
+		mockMvc.perform(put(authorLocation + "/books/" + bookIds[0])).andExpect(status().isCreated())
+				.andExpect(header().string("Location", endsWith(authorLocation + "/books")));
+		mockMvc.perform(put(authorLocation + "/books/" + bookIds[0])).andExpect(status().isOk())
+				.andExpect(header().string("Location", endsWith(authorLocation + "/books")));
+		mockMvc.perform(get(authorLocation)).andExpect(header().string("ETag", "\"1\""));
+
+		mockMvc.perform(post(authorLocation + "/books/batch").header(HttpHeaders.CONTENT_TYPE, "application/json")
+				.content("[" + bookIds[0] + ", " + bookIds[1] + ", " + bookIds[2] + ", -1]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.linked", contains((int) bookIds[1], (int) bookIds[2])))
+				.andExpect(jsonPath("$.alreadyLinked", contains((int) bookIds[0])))
+				.andExpect(jsonPath("$.unknown", contains(-1)));
+		mockMvc.perform(get(authorLocation + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books", hasSize(3)));
+		mockMvc.perform(get("/books/" + bookIds[2] + "/authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authors[0].lastName").value("Tolkien"));
+		mockMvc.perform(get(authorLocation)).andExpect(header().string("ETag", "\"2\""));
+
+		mockMvc.perform(put(authorLocation + "/books/-1")).andExpect(status().isBadRequest());
+		mockMvc.perform(put("/books/" + bookIds[0] + "/authors/-1")).andExpect(status().isBadRequest());
+		mockMvc.perform(post("/authors/-1/books/batch").header(HttpHeaders.CONTENT_TYPE, "application/json")
+				.content("[" + bookIds[0] + "]")).andExpect(status().isNotFound());
+		mockMvc.perform(post(authorLocation + "/books/batch").header(HttpHeaders.CONTENT_TYPE, "application/json")
+				.content(LongStream.rangeClosed(1, 1001).mapToObj(Long::toString)
+						.collect(Collectors.joining(", ", "[", "]"))))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void shouldRefreshCachedAssociationsOnLink() throws Exception {
+
+		String authorLocation = mockMvc
+				.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"firstName\": \"Bilbo\", \"lastName\":\"Baggins\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+		String bookLocation = mockMvc
+				.perform(post("/books").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"isbn\": \"0123401234012\", \"title\":\"The Hobbit\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+
+		// Load (and cache) both sides of the association before linking them
+		mockMvc.perform(get(authorLocation + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books", hasSize(0)));
+		mockMvc.perform(get(bookLocation + "/authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authors", hasSize(0)));
+
+		String bookId = bookLocation.substring(bookLocation.lastIndexOf('/') + 1);
+		mockMvc.perform(put(authorLocation + "/books/" + bookId)).andExpect(status().isCreated());
+
+		mockMvc.perform(get(authorLocation + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books[0].title").value("The Hobbit"));
+		mockMvc.perform(get(bookLocation + "/authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authors[0].lastName").value("Baggins"));
+
+		// A cached query result must not outlive the deleted book
+		mockMvc.perform(get("/books/search/findByIsbn?isbn={isbn}", "0123401234012")).andExpect(status().isOk());
+		mockMvc.perform(delete(authorLocation)).andExpect(status().isNoContent());
+		mockMvc.perform(delete(bookLocation)).andExpect(status().isNoContent());
+		mockMvc.perform(get("/books/search/findByIsbn?isbn={isbn}", "0123401234012")).andExpect(status().isNotFound());
+	}
+
 	@Test
 	public void shouldQueryAuthor() throws Exception {
 
@@ -190,6 +329,28 @@ public class ApplicationTests {
 				.andExpect(jsonPath("$._embedded.authorResources[0].firstName").value("Bilbo"));
 	}
 
+	@Test
+	public void shouldQueryAuthorWithoutCount() throws Exception {
+
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+					.content("{\"firstName\": \"Bilbo\", \"lastName\":\"Baggins\"}")).andExpect(status().isCreated());
+		}
+
+		mockMvc.perform(get("/authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._links.search.href").value(endsWith("{?lastName,page,size,sort,count}")));
+
+		mockMvc.perform(get("/authors/search/findByLastName?lastName={lastName}&size=1&count=false", "Baggins"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$._embedded.authorResources.length()").value(1))
+				.andExpect(jsonPath("$._links.next.href").value(containsString("page=1")))
+				.andExpect(jsonPath("$._links.prev").doesNotExist()).andExpect(jsonPath("$.page").doesNotExist());
+
+		mockMvc.perform(get("/authors/search/findByLastName?lastName={lastName}&size=1&page=1&count=false", "Baggins"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$._embedded.authorResources[0].firstName").value("Bilbo"))
+				.andExpect(jsonPath("$._links.next").doesNotExist())
+				.andExpect(jsonPath("$._links.prev.href").value(containsString("page=0")));
+	}
+
 	@Test
 	public void shouldQueryBook() throws Exception {
 
@@ -201,6 +362,150 @@ public class ApplicationTests {
 				.andExpect(jsonPath("$.title").value("The Hobbit"));
 	}
 
+	@Test
+	public void shouldPageAuthorsByCursor() throws Exception {
+
+		for (String lastName : new String[] { "Baggins", "Gamgee", "Brandybuck" }) {
+			mockMvc.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+					.content(String.format("{\"firstName\": \"Name\", \"lastName\":\"%s\"}", lastName)))
+					.andExpect(status().isCreated());
+		}
+
+		// First page ordered by last name, a next link but no prev link and no page metadata
+		MvcResult first = mockMvc.perform(get("/authors?after=&size=2&sort=lastName")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[0].lastName").value("Baggins"))
+				.andExpect(jsonPath("$._embedded.authorResources[1].lastName").value("Brandybuck"))
+				.andExpect(jsonPath("$._links.prev").doesNotExist()).andExpect(jsonPath("$.page").doesNotExist())
+				.andReturn();
+
+		String next = JsonPath.read(first.getResponse().getContentAsString(), "$._links.next.href");
+		MvcResult second = mockMvc.perform(get(next)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources.length()").value(1))
+				.andExpect(jsonPath("$._embedded.authorResources[0].lastName").value("Gamgee"))
+				.andExpect(jsonPath("$._links.next").doesNotExist()).andReturn();
+
+		String prev = JsonPath.read(second.getResponse().getContentAsString(), "$._links.prev.href");
+		mockMvc.perform(get(prev)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[0].lastName").value("Baggins"))
+				.andExpect(jsonPath("$._embedded.authorResources[1].lastName").value("Brandybuck"))
+				.andExpect(jsonPath("$._links.prev").doesNotExist());
+
+		mockMvc.perform(get("/authors?after=not-a-cursor")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void shouldImportBulk() throws Exception {
+
+		String lines = "{\"type\":\"author\",\"ref\":\"tolkien\",\"firstName\":\"John\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit\"}\n"
+				+ "{\"type\":\"link\",\"author\":\"tolkien\",\"isbn\":\"0123401234012\"}\n"
+				+ "\n"
+				+ "{\"type\":\"link\",\"author\":\"tolkien\",\"isbn\":\"0000000000000\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit\"}\n"
+				+ "{\"type\":\"author\",\"firstName\":\"John\"}\n"
+				+ "{\"type\":\"author\",\n";
+
+		mockMvc.perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").content(lines))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.lines").value(8))
+				.andExpect(jsonPath("$.authors").value(1)).andExpect(jsonPath("$.books").value(1))
+				.andExpect(jsonPath("$.links").value(1)).andExpect(jsonPath("$.errors[*].line", contains(5, 6, 7, 8)));
+
+		mockMvc.perform(get("/books/search/findByIsbn?isbn={isbn}", "0123401234012")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.title").value("The Hobbit"));
+		mockMvc.perform(get("/authors/search/findByLastName?lastName={lastName}", "Tolkien")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[0].firstName").value("John"));
+	}
+
+	@Test
+	public void shouldExportCatalogue() throws Exception {
+
+		String lines = "{\"type\":\"author\",\"ref\":\"tolkien\",\"firstName\":\"John\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"author\",\"firstName\":\"Bilbo\",\"lastName\":\"Baggins\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit, or There and Back Again\"}\n"
+				+ "{\"type\":\"link\",\"author\":\"tolkien\",\"isbn\":\"0123401234012\"}\n";
+		mockMvc.perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").content(lines))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.errors", hasSize(0)));
+
+		MvcResult ndjson = mockMvc.perform(get("/export/authors")).andExpect(request().asyncStarted()).andReturn();
+		String[] authors = mockMvc.perform(asyncDispatch(ndjson)).andExpect(status().isOk())
+				.andExpect(content().contentType("application/x-ndjson")).andReturn().getResponse()
+				.getContentAsString().split("\n");
+		assertThat(authors.length, is(2));
+		assertThat(JsonPath.read(authors[0], "$.lastName"), is("Tolkien"));
+		assertThat(JsonPath.read(authors[0], "$.bookIds.length()"), is(1));
+		assertThat(JsonPath.read(authors[1], "$.bookIds.length()"), is(0));
+
+		MvcResult csv = mockMvc.perform(get("/export/books?format=csv")).andExpect(request().asyncStarted())
+				.andReturn();
+		String[] books = mockMvc.perform(asyncDispatch(csv)).andExpect(status().isOk()).andReturn().getResponse()
+				.getContentAsString().split("\r\n");
+		assertThat(books.length, is(2));
+		assertThat(books[0], is("id,isbn,title,authorIds"));
+		assertThat(books[1], endsWith(",0123401234012,\"The Hobbit, or There and Back Again\","
+				+ JsonPath.read(authors[0], "$.id")));
+
+		mockMvc.perform(get("/export/books?format=xml")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void shouldSearchByNameAndTitle() throws Exception {
+
+		String lines = "{\"type\":\"author\",\"firstName\":\"John Ronald Reuel\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"author\",\"firstName\":\"Christopher\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234013\",\"title\":\"The Lord of the Rings\"}\n";
+		mockMvc.perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").content(lines))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.errors", hasSize(0)));
+
+		mockMvc.perform(get("/authors/search/byName?q={q}", "tolk")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources", hasSize(2)))
+				.andExpect(jsonPath("$.page.totalElements").value(2));
+		mockMvc.perform(get("/authors/search/byName?q={q}&size=1", "TOLKIEN chris")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[0].firstName").value("Christopher"))
+				.andExpect(jsonPath("$._embedded.authorResources[0]._links.self.href").exists());
+		mockMvc.perform(get("/books/search/byTitle?q={q}", "ring lord")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.bookResources[0].title").value("The Lord of the Rings"))
+				.andExpect(jsonPath("$.page.totalElements").value(1));
+
+		String location = mockMvc.perform(get("/books/search/findByIsbn?isbn={isbn}", "0123401234012"))
+				.andReturn().getResponse().getContentAsString();
+		mockMvc.perform(delete(JsonPath.read(location, "$._links.self.href").toString()))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(get("/books/search/byTitle?q={q}", "hobbit")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded").doesNotExist());
+	}
+
+	@Test
+	public void shouldEmbedAssociations() throws Exception {
+
+		String lines = "{\"type\":\"author\",\"ref\":\"tolkien\",\"firstName\":\"John\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"author\",\"firstName\":\"Bilbo\",\"lastName\":\"Baggins\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234013\",\"title\":\"The Lord of the Rings\"}\n"
+				+ "{\"type\":\"link\",\"author\":\"tolkien\",\"isbn\":\"0123401234012\"}\n"
+				+ "{\"type\":\"link\",\"author\":\"tolkien\",\"isbn\":\"0123401234013\"}\n";
+		mockMvc.perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").content(lines))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.errors", hasSize(0)));
+
+		mockMvc.perform(get("/authors?embed=books&sort=lastName")).andExpect(status().isOk())
+				.andExpect(header().doesNotExist("ETag"))
+				.andExpect(jsonPath("$._embedded.authorResources[0].lastName").value("Baggins"))
+				.andExpect(jsonPath("$._embedded.authorResources[0]._embedded.books", hasSize(0)))
+				.andExpect(jsonPath("$._embedded.authorResources[1]._embedded.books[*].title",
+						contains("The Hobbit", "The Lord of the Rings")))
+				.andExpect(jsonPath("$._embedded.authorResources[1]._embedded.books[0].id").isNumber());
+		mockMvc.perform(get("/authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[0]._embedded").doesNotExist());
+
+		String book = mockMvc.perform(get("/books/search/findByIsbn?isbn={isbn}", "0123401234012")).andReturn()
+				.getResponse().getContentAsString();
+		mockMvc.perform(get(JsonPath.read(book, "$._links.self.href") + "?embed=authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.title").value("The Hobbit"))
+				.andExpect(jsonPath("$._embedded.authors[0].lastName").value("Tolkien"))
+				.andExpect(jsonPath("$._embedded.authors[0].bookId").doesNotExist());
+		mockMvc.perform(get("/books?embed=books")).andExpect(status().isBadRequest());
+	}
+
 	@Test
 	public void shouldDeleteAuthor() throws Exception {
 
@@ -229,4 +534,91 @@ public class ApplicationTests {
 
 		mockMvc.perform(get(location)).andExpect(status().isNotFound());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void shouldDeleteLinkedBooksAndManyAtOnce() throws Exception {
+		String author = mockMvc
+				.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"firstName\": \"John\", \"lastName\":\"Tolkien\"}"))
+				.andReturn().getResponse().getHeader("Location");
+		String hobbit = mockMvc
+				.perform(post("/books").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"isbn\": \"0123401234012\", \"title\":\"The Hobbit\"}"))
+				.andReturn().getResponse().getHeader("Location");
+		String rings = mockMvc
+				.perform(post("/books").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"isbn\": \"0123401234013\", \"title\":\"The Lord of the Rings\"}"))
+				.andReturn().getResponse().getHeader("Location");
+		String hobbitId = hobbit.substring(hobbit.lastIndexOf('/') + 1);
+		String ringsId = rings.substring(rings.lastIndexOf('/') + 1);
+		mockMvc.perform(put(author + "/books/" + hobbitId)).andExpect(status().isCreated());
+		mockMvc.perform(put(author + "/books/" + ringsId)).andExpect(status().isCreated());
+		mockMvc.perform(get(author + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books", hasSize(2)));
+
+		// The book is still linked, its author_book row goes with it
+		mockMvc.perform(delete(hobbit)).andExpect(status().isNoContent());
+		mockMvc.perform(delete(hobbit)).andExpect(status().isNotFound());
+		mockMvc.perform(get(author + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books[*].title", contains("The Lord of the Rings")));
+
+		mockMvc.perform(delete("/books?ids={ids}", ringsId + "," + hobbitId + ",-1"))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(get(rings)).andExpect(status().isNotFound());
+		mockMvc.perform(get(author + "/books")).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.books", hasSize(0)));
+		mockMvc.perform(delete("/authors?ids={ids}", author.substring(author.lastIndexOf('/') + 1)))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(get(author)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void shouldGetManyInRequestOrder() throws Exception {
+
+		String lines = "{\"type\":\"author\",\"firstName\":\"John\",\"lastName\":\"Tolkien\"}\n"
+				+ "{\"type\":\"author\",\"firstName\":\"Bilbo\",\"lastName\":\"Baggins\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234012\",\"title\":\"The Hobbit\"}\n"
+				+ "{\"type\":\"book\",\"isbn\":\"0123401234013\",\"title\":\"The Lord of the Rings\"}\n";
+		mockMvc.perform(post("/bulk").header(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").content(lines))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.errors", hasSize(0)));
+		Long tolkien = authorRepository.findViewsByLastName("Tolkien", PageRequest.of(0, 1)).getContent().get(0)
+				.getId();
+		Long baggins = authorRepository.findViewsByLastName("Baggins", PageRequest.of(0, 1)).getContent().get(0)
+				.getId();
+
+		mockMvc.perform(get("/authors?ids={ids}", baggins + ",-1," + tolkien + "," + baggins))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[*].lastName", contains("Baggins", "Tolkien")))
+				.andExpect(jsonPath("$._embedded.authorResources[1]._links.self.href", endsWith("/authors/" + tolkien)))
+				.andExpect(jsonPath("$.notFound", contains(-1)));
+		mockMvc.perform(get("/books?isbns={isbns}", "0123401234013,0000000000000,0123401234012"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.bookResources[*].title",
+						contains("The Lord of the Rings", "The Hobbit")))
+				.andExpect(jsonPath("$._embedded.bookResources[0]._links.authors.href").exists())
+				.andExpect(jsonPath("$.notFound", contains("0000000000000")));
+
+		// More ids than one IN query takes, still within the statement budget
+		StringBuilder ids = new StringBuilder().append(tolkien);
+		for (long id = -1; id > -700; id--) {
+			ids.append(',').append(id);
+		}
+		mockMvc.perform(get("/authors?ids={ids}", ids)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[*].lastName", contains("Tolkien")))
+				.andExpect(jsonPath("$.notFound", hasSize(699)));
+		for (long id = -700; id > -1100; id--) {
+			ids.append(',').append(id);
+		}
+		mockMvc.perform(get("/authors?ids={ids}", ids)).andExpect(status().isBadRequest());
+
+		// A cached reply does not hide an author created later
+		String location = mockMvc
+				.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"firstName\": \"Samwise\", \"lastName\":\"Gamgee\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+		String gamgee = location.substring(location.lastIndexOf('/') + 1);
+		mockMvc.perform(get("/authors?ids={ids}", tolkien + "," + gamgee)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.authorResources[*].lastName", contains("Tolkien", "Gamgee")))
+				.andExpect(jsonPath("$.notFound", hasSize(0)));
+	}
+}
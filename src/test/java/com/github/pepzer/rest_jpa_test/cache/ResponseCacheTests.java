@@ -0,0 +1,148 @@
+package com.github.pepzer.rest_jpa_test.cache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.StreamUtils;
+
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.metrics.RequestStatements;
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.generate-unique-name=true", "response-cache.gzip=true",
+		"response-cache.max-bytes=8192" })
+@AutoConfigureMockMvc
+public class ResponseCacheTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AuthorRepository authorRepository;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	public void shouldAnswerRepeatedReadsWithoutTheHandler() throws Exception {
+
+		String location = create("/authors", "{\"firstName\": \"Frodo\", \"lastName\":\"Baggins\"}");
+		double hits = hits();
+
+		MvcResult first = mockMvc.perform(get(location)).andExpect(status().isOk()).andReturn();
+		MvcResult second = mockMvc.perform(get(location)).andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/hal+json;charset=UTF-8"))
+				.andExpect(header().string(HttpHeaders.ETAG, first.getResponse().getHeader(HttpHeaders.ETAG)))
+				.andReturn();
+		assertThat(second.getResponse().getContentAsString(), is(first.getResponse().getContentAsString()));
+		assertThat(RequestStatements.of(second.getRequest()).getCount(), is(0));
+
+		MvcResult notModified = mockMvc
+				.perform(get(location).header(HttpHeaders.IF_NONE_MATCH, first.getResponse().getHeader(HttpHeaders.ETAG)))
+				.andExpect(status().isNotModified()).andReturn();
+		assertThat(RequestStatements.of(notModified.getRequest()).getCount(), is(0));
+
+		// Plain JSON is another entry
+		mockMvc.perform(get(location).header(HttpHeaders.ACCEPT, "application/json")).andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/json;charset=UTF-8"));
+		assertThat(hits() - hits, is(2.0));
+	}
+
+	@Test
+	public void shouldShareTheEntryOfEquivalentQueries() throws Exception {
+
+		mockMvc.perform(get("/books?embed=authors&page=0&size=20")).andExpect(status().isOk());
+		double hits = hits();
+		for (String query : new String[] { "size=20&page=0&embed=authors", "embed=authors&size=20", "embed=authors" }) {
+			MvcResult result = mockMvc.perform(get("/books?" + query)).andExpect(status().isOk()).andReturn();
+			assertThat(RequestStatements.of(result.getRequest()).getCount(), is(0));
+		}
+		assertThat(hits() - hits, is(3.0));
+
+		// Another page, another size or another value is another entry
+		mockMvc.perform(get("/books?embed=authors&page=1")).andExpect(status().isOk());
+		mockMvc.perform(get("/books?embed=authors&size=10")).andExpect(status().isOk());
+		mockMvc.perform(get("/books?embed=authors&sort=title")).andExpect(status().isOk());
+		assertThat(hits() - hits, is(3.0));
+	}
+
+	@Test
+	public void shouldDropResponsesOnceWhatTheyShowHasChanged() throws Exception {
+
+		String author = create("/authors", "{\"firstName\": \"Samwise\", \"lastName\":\"Gamgee\"}");
+		String book = create("/books", "{\"isbn\": \"0123401234099\", \"title\":\"The Return of the King\"}");
+		long authorId = Long.parseLong(author.substring(author.lastIndexOf('/') + 1));
+
+		mockMvc.perform(get(book + "?embed=authors")).andExpect(jsonPath("$._embedded.authors").isEmpty());
+		mockMvc.perform(get(author)).andExpect(header().string(HttpHeaders.ETAG, "\"0\""));
+		String total = mockMvc.perform(get("/authors")).andReturn().getResponse().getContentAsString();
+
+		// Linked with an insert behind Hibernate's back
+		mockMvc.perform(put(author + "/books/" + book.substring(book.lastIndexOf('/') + 1)))
+				.andExpect(status().isCreated());
+		mockMvc.perform(get(book + "?embed=authors")).andExpect(jsonPath("$._embedded.authors[0].id").value(authorId));
+		mockMvc.perform(get(author)).andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+		// Updated through Hibernate
+		Author entity = authorRepository.findById(authorId).get();
+		entity.setFirstName("Sam");
+		authorRepository.save(entity);
+		mockMvc.perform(get(author)).andExpect(jsonPath("$.firstName").value("Sam"));
+		mockMvc.perform(get(book + "?embed=authors")).andExpect(jsonPath("$._embedded.authors[0].firstName").value("Sam"));
+
+		create("/authors", "{\"firstName\": \"Rosie\", \"lastName\":\"Cotton\"}");
+		assertThat(mockMvc.perform(get("/authors")).andReturn().getResponse().getContentAsString(), not(total));
+
+		// Deleted in bulk
+		mockMvc.perform(delete(book)).andExpect(status().isNoContent());
+		mockMvc.perform(get(book + "?embed=authors")).andExpect(status().isNotFound());
+		mockMvc.perform(get(author)).andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+	}
+
+	@Test
+	public void shouldCompressEntriesAndKeepThemUnderTheBound() throws Exception {
+
+		String location = create("/books", "{\"isbn\": \"0123401234098\", \"title\":\"The Two Towers\"}");
+		String plain = mockMvc.perform(get(location)).andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+				.andReturn().getResponse().getContentAsString();
+		byte[] compressed = mockMvc.perform(get(location).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+				.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+				.andExpect(header().stringValues(HttpHeaders.VARY, hasItems(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)))
+				.andReturn().getResponse().getContentAsByteArray();
+		assertThat(new String(StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))),
+				"UTF-8"), is(plain));
+
+		for (int size = 1; size <= 40; size++) {
+			mockMvc.perform(get("/books?size={size}", size)).andExpect(status().isOk());
+		}
+		assertThat(registry.get("response.cache.size").gauge().value(), lessThanOrEqualTo(8192.0));
+		assertThat(registry.get("response.cache.removals").tag("cause", "size").counter().count(), greaterThan(0.0));
+	}
+
+	private String create(String path, String json) throws Exception {
+		return mockMvc.perform(post(path).header(HttpHeaders.CONTENT_TYPE, "application/json").content(json))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+	}
+
+	private double hits() {
+		return registry.get("response.cache.requests").tag("result", "hit").counter().count();
+	}
+}
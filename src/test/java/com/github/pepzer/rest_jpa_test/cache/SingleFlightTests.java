@@ -0,0 +1,191 @@
+package com.github.pepzer.rest_jpa_test.cache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.github.pepzer.rest_jpa_test.projection.AuthorView;
+import com.github.pepzer.rest_jpa_test.projection.BookView;
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.generate-unique-name=true",
+		"spring.jpa.properties.hibernate.cache.use_query_cache=false", "single-flight.max-wait-ms=300" })
+@ActiveProfiles("sample")
+public class SingleFlightTests {
+
+	private static final int CALLERS = 32;
+
+	/**
+	 * Every lookup by ISBN or last name takes a while, so that the concurrent calls overlap. The
+	 * ISBN "slow" takes longer than the callers wait, "broken" fails.
+	 */
+	@TestConfiguration
+	static class SlowLookups {
+
+		static final AtomicInteger EXECUTIONS = new AtomicInteger();
+
+		@Bean
+		static BeanPostProcessor slowLookupsDataSource() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof DataSource)) {
+						return bean;
+					}
+					return ProxyDataSourceBuilder.create((DataSource) bean).listener(new QueryExecutionListener() {
+						@Override
+						public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+							String sql = queries.get(0).getQuery();
+							if (!sql.contains("isbn=?") && !sql.contains("lastname=?")) {
+								return;
+							}
+							EXECUTIONS.incrementAndGet();
+							Object parameter = queries.get(0).getParametersList().get(0).get(0).getArgs()[1];
+							sleep("slow".equals(parameter) ? 1000 : 100);
+							if ("broken".equals(parameter)) {
+								throw new IllegalStateException("broken lookup");
+							}
+						}
+
+						@Override
+						public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+						}
+					}).build();
+				}
+			};
+		}
+
+		private static void sleep(long ms) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(ms);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private AuthorRepository authorRepository;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	public void shouldRunConcurrentIdenticalLookupsOnce() throws Exception {
+
+		int executions = SlowLookups.EXECUTIONS.get();
+		List<Optional<BookView>> books = concurrently(() -> bookRepository.findViewByIsbn("0123456789012"));
+		assertThat(SlowLookups.EXECUTIONS.get() - executions, lessThanOrEqualTo(2));
+		for (Optional<BookView> book : books) {
+			assertThat(book.get().getTitle(), is("Title1"));
+		}
+
+		executions = SlowLookups.EXECUTIONS.get();
+		List<Page<AuthorView>> pages = concurrently(
+				() -> authorRepository.findViewsByLastName("Surname1", PageRequest.of(0, 10)));
+		assertThat(SlowLookups.EXECUTIONS.get() - executions, lessThanOrEqualTo(2));
+		pages.forEach(page -> assertThat(page.getContent().get(0).getFirstName(), is("Name1")));
+		assertThat(flights("AuthorRepository", "shared"), greaterThanOrEqualTo(CALLERS - 2.0));
+
+		// Once the lookup has returned the next call runs it again
+		executions = SlowLookups.EXECUTIONS.get();
+		bookRepository.findViewByIsbn("0123456789012");
+		assertThat(SlowLookups.EXECUTIONS.get() - executions, is(1));
+	}
+
+	@Test
+	public void shouldHandTheExceptionToEveryCaller() throws Exception {
+
+		int executions = SlowLookups.EXECUTIONS.get();
+		for (Future<Optional<BookView>> lookup : run(() -> bookRepository.findViewByIsbn("broken"))) {
+			try {
+				lookup.get();
+			} catch (ExecutionException e) {
+				assertThat(e.getCause(), instanceOf(DataAccessException.class));
+				continue;
+			}
+			throw new AssertionError("The lookup did not fail");
+		}
+		assertThat(SlowLookups.EXECUTIONS.get() - executions, lessThanOrEqualTo(2));
+	}
+
+	@Test
+	public void shouldStopWaitingAfterTheMaximumWait() throws Exception {
+
+		double timeouts = flights("BookRepository", "timeout");
+		List<Optional<BookView>> books = concurrently(() -> bookRepository.findViewByIsbn("slow"));
+		books.forEach(book -> assertThat(book.isPresent(), is(false)));
+		assertThat(flights("BookRepository", "timeout") - timeouts, greaterThanOrEqualTo(CALLERS - 2.0));
+	}
+
+	private <T> List<T> concurrently(Callable<T> lookup) throws Exception {
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : run(lookup)) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	/**
+	 * The lookup by CALLERS threads at once, done when it returns.
+	 */
+	private <T> List<Future<T>> run(Callable<T> lookup) throws InterruptedException {
+		CyclicBarrier start = new CyclicBarrier(CALLERS);
+		List<Callable<T>> callers = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			callers.add(() -> {
+				start.await();
+				return lookup.call();
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try {
+			return executor.invokeAll(callers);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private double flights(String repository, String result) {
+		return registry.find("repository.single.flight").tags("repository", repository, "result", result).counters()
+				.stream().mapToDouble(counter -> counter.count()).sum();
+	}
+}
@@ -0,0 +1,162 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "database.h2.mode=server", "database.h2.directory=build/h2-server-test", "database.h2.name=catalogue-${random.uuid}",
+		"database.h2.cache-size-kb=4096", "database.statement-cache-size=32", "database.pool.maximum-size=4",
+		"database.fetch-size.queries[AuthorRepository.findAllViews]=250",
+		"database.fetch-size.queries[AuthorRepository.findEverything]=250", "jdbc.execution=async",
+		"jdbc.executor.threads=8" })
+@ContextConfiguration(initializers = DatabaseConfigurationTests.FreePort.class)
+public class DatabaseConfigurationTests {
+
+	/**
+	 * Runs the H2 server on a port that is free, not on a fixed one another build may hold.
+	 */
+	static class FreePort implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+		@Override
+		public void initialize(ConfigurableApplicationContext context) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				TestPropertyValues.of("database.h2.port=" + socket.getLocalPort()).applyTo(context);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Records the fetch size of the queries as they are executed.
+	 */
+	@TestConfiguration
+	static class ExecutedFetchSizes {
+
+		static final List<Integer> FETCH_SIZES = new CopyOnWriteArrayList<>();
+
+		@Bean
+		static BeanPostProcessor fetchSizeRecordingDataSource() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof DataSource)) {
+						return bean;
+					}
+					return ProxyDataSourceBuilder.create((DataSource) bean).listener(new QueryExecutionListener() {
+						@Override
+						public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+						}
+
+						@Override
+						public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+							if (!"executeQuery".equals(execution.getMethod().getName())) {
+								return;
+							}
+							try {
+								FETCH_SIZES.add(execution.getStatement().getFetchSize());
+							} catch (SQLException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+					}).build();
+				}
+			};
+		}
+	}
+
+	@Autowired
+	private DatabaseProperties properties;
+
+	@Autowired
+	private DatabaseSelfCheck selfCheck;
+
+	@Autowired
+	private AuthorRepository authorRepository;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private CommandLineRunner seed;
+
+	@Test
+	public void shouldRunOnTheConfiguredServerAndPool() {
+		Map<String, Object> settings = selfCheck.settings();
+
+		assertThat((String) settings.get("url"),
+				startsWith("jdbc:h2:tcp://localhost:" + properties.getH2().getPort() + "/./catalogue-"));
+		assertEquals(4, settings.get("pool.maximum-size"));
+		assertEquals(4, settings.get("pool.minimum-idle"));
+		assertEquals("32", settings.get("QUERY_CACHE_SIZE"));
+		assertEquals("4096", settings.get("CACHE_SIZE"));
+
+		// the migrations ran on the server database, the tuned query reads from it
+		authorRepository.save(new Author("John", "Tolkien"));
+		assertThat(authorRepository.findAllViews(PageRequest.of(0, 500)).getTotalElements(), greaterThan(0L));
+	}
+
+	@Test
+	public void shouldSetTheFetchSizeOnTheStatementsOfTheTunedQuery() {
+		ExecutedFetchSizes.FETCH_SIZES.clear();
+		authorRepository.findAllViews(PageRequest.of(0, 500));
+		assertThat(ExecutedFetchSizes.FETCH_SIZES, hasItem(250));
+
+		ExecutedFetchSizes.FETCH_SIZES.clear();
+		authorRepository.findAll(PageRequest.of(0, 500));
+		assertThat(ExecutedFetchSizes.FETCH_SIZES, not(empty()));
+		assertThat(ExecutedFetchSizes.FETCH_SIZES, not(hasItem(250)));
+	}
+
+	@Test
+	public void shouldReportWhatCannotWorkAsConfigured() {
+		assertThat(selfCheck.check(),
+				containsInAnyOrder(
+						"database.fetch-size.queries: no repository method AuthorRepository.findEverything",
+						"database.pool.maximum-size (4) is below jdbc.executor.threads (8), the JDBC threads wait for connections"));
+	}
+
+	@Test
+	public void shouldSeedAPersistedDatabaseOnce() throws Exception {
+		// A restart on the same server database runs the seed again
+		seed.run();
+		assertThat(bookRepository.findByIsbnIn(Collections.singleton("0123401234012")), hasSize(1));
+	}
+}
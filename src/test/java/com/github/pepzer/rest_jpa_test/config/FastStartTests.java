@@ -0,0 +1,49 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.generate-unique-name=true")
+@ActiveProfiles("faststart")
+@AutoConfigureMockMvc
+public class FastStartTests {
+
+	@Autowired
+	private ConfigurableApplicationContext context;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	public void shouldCreateBeansWhenFirstNeeded() throws Exception {
+		assertTrue(context.getBeanFactory().getBeanDefinition("catalogueExporter").isLazyInit());
+		assertFalse(context.getBeanFactory().containsSingleton("catalogueExporter"));
+		assertTrue(context.getBeansOfType(CommandLineRunner.class).isEmpty());
+
+		// a new database: no seeded author, and no sample catalogue without the sample profile
+		mockMvc.perform(get("/authors")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.page.totalElements").value(0));
+		mockMvc.perform(get("/export/books")).andExpect(status().isOk());
+		assertTrue(context.getBeanFactory().containsSingleton("catalogueExporter"));
+
+		// bound by a SmartInitializingSingleton, which stays eager
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content().string(containsString("hibernate_statements_total{")));
+	}
+}
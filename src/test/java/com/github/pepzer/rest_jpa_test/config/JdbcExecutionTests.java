@@ -0,0 +1,92 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+import com.github.pepzer.rest_jpa_test.repository.BookRepository;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.generate-unique-name=true", "jdbc.execution=async",
+		"jdbc.executor.threads=1", "jdbc.executor.queue-capacity=0", "jdbc.executor.retry-after=2" })
+@AutoConfigureMockMvc
+public class JdbcExecutionTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ThreadPoolTaskExecutor jdbcExecutor;
+
+	@Autowired
+	private AuthorRepository authorRepository;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Before
+	public void deleteAllBeforeTests() throws Exception {
+		authorRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+
+	@Test
+	public void shouldServeReadsOnTheJdbcExecutor() throws Exception {
+
+		String location = mockMvc
+				.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"firstName\": \"Bilbo\", \"lastName\":\"Baggins\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+
+		MvcResult authors = mockMvc.perform(get("/authors")).andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(authors)).andExpect(status().isOk()).andExpect(header().exists("ETag"))
+				.andExpect(jsonPath("$._embedded.authorResources[0].lastName").value("Baggins"))
+				.andExpect(jsonPath("$._embedded.authorResources[0]._links.self.href").value(location));
+
+		MvcResult author = mockMvc.perform(get(location)).andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(author)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.firstName").value("Bilbo"));
+
+		MvcResult missing = mockMvc.perform(get("/books/0")).andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(missing)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void shouldRejectReadsWhenTheExecutorIsFull() throws Exception {
+
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch busy = new CountDownLatch(1);
+		jdbcExecutor.execute(() -> {
+			busy.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		busy.await();
+
+		try {
+			mockMvc.perform(get("/authors")).andExpect(request().asyncNotStarted())
+					.andExpect(status().isServiceUnavailable()).andExpect(header().string("Retry-After", is("2")));
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+// On the embedded server, MockMvc does not go through the compression of Tomcat
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.generate-unique-name=true" })
+@ActiveProfiles("sample")
+public class MediaTypeConfigurationTests {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	public void shouldWriteTheSameHalAsSmile() throws Exception {
+
+		ResponseEntity<byte[]> response = get("/authors?sort=id", MediaTypeConfiguration.SMILE, null);
+		assertThat(response.getStatusCode(), is(HttpStatus.OK));
+		assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaTypeConfiguration.SMILE), is(true));
+
+		JsonNode smile = new ObjectMapper(new SmileFactory()).readTree(response.getBody());
+		JsonNode json = new ObjectMapper().readTree(get("/authors?sort=id", MediaType.ALL, null).getBody());
+		assertThat(smile.at("/_embedded/authorResources/0/_links/self/href").asText(), endsWith("/authors/1"));
+		assertThat(smile, is(json));
+		assertThat(response.getBody().length, lessThan(json.toString().length()));
+	}
+
+	@Test
+	public void shouldLeaveTheLinksOutOfCompactJson() throws Exception {
+
+		ResponseEntity<byte[]> response = get("/authors?embed=books", MediaTypeConfiguration.COMPACT_JSON, null);
+		assertThat(response.getStatusCode(), is(HttpStatus.OK));
+		assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaTypeConfiguration.COMPACT_JSON),
+				is(true));
+
+		JsonNode page = new ObjectMapper().readTree(response.getBody());
+		assertThat(page.at("/_embedded/authorResources/0/lastName").asText(), is("Surname1"));
+		assertThat(page.at("/_embedded/authorResources/0/_embedded/books").size(), greaterThan(0));
+		assertThat(page.at("/page/totalElements").asInt(), greaterThan(0));
+		assertThat(page.findValues("_links"), empty());
+
+		// Any other Accept still gets HAL, from the handlers outside of the response cache too
+		assertThat(get("/authors?count=false", MediaType.ALL, null).getHeaders().getContentType()
+				.isCompatibleWith(MediaTypes.HAL_JSON), is(true));
+	}
+
+	@Test
+	public void shouldTagEachRepresentationAndVaryByAccept() throws Exception {
+
+		ResponseEntity<byte[]> hal = get("/authors/1", MediaType.ALL, null);
+		ResponseEntity<byte[]> smile = get("/authors/1", MediaTypeConfiguration.SMILE, null);
+		ResponseEntity<byte[]> compact = get("/authors?size=5", MediaTypeConfiguration.COMPACT_JSON, null);
+		assertThat(hal.getHeaders().getETag(), is("\"0\""));
+		assertThat(smile.getHeaders().getETag(), is("\"0-smile\""));
+		assertThat(compact.getHeaders().getETag(), endsWith("-compact\""));
+		for (ResponseEntity<byte[]> response : Arrays.asList(hal, smile, compact)) {
+			assertThat(response.getHeaders().getVary(), hasItem(HttpHeaders.ACCEPT));
+		}
+
+		// The tag of the HAL document does not validate the Smile one
+		assertThat(get("/authors/1", MediaTypeConfiguration.SMILE, null, hal.getHeaders().getETag()).getStatusCode(),
+				is(HttpStatus.OK));
+		ResponseEntity<byte[]> notModified = get("/authors/1", MediaTypeConfiguration.SMILE, null,
+				smile.getHeaders().getETag());
+		assertThat(notModified.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+		assertThat(notModified.getHeaders().getVary(), hasItem(HttpHeaders.ACCEPT));
+
+		// Gzipped pages vary by both
+		assertThat(get("/authors?embed=books", MediaType.ALL, "gzip").getHeaders().getVary(),
+				hasItems(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING));
+	}
+
+	@Test
+	public void shouldCompressTheLargerResponses() throws Exception {
+
+		ResponseEntity<byte[]> page = get("/authors?embed=books", MediaType.ALL, "gzip");
+		assertThat(page.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+		String json = StreamUtils.copyToString(new GZIPInputStream(new ByteArrayInputStream(page.getBody())),
+				StandardCharsets.UTF_8);
+		assertThat(json, containsString("\"authorResources\""));
+
+		assertThat(get("/authors?embed=books", MediaType.ALL, null).getHeaders()
+				.getFirst(HttpHeaders.CONTENT_ENCODING), nullValue());
+		assertThat(get("/authors/1", MediaType.ALL, "gzip").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING),
+				nullValue());
+	}
+
+	private ResponseEntity<byte[]> get(String path, MediaType accept, String acceptEncoding) {
+		return get(path, accept, acceptEncoding, null);
+	}
+
+	private ResponseEntity<byte[]> get(String path, MediaType accept, String acceptEncoding, String ifNoneMatch) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(Collections.singletonList(accept));
+		if (acceptEncoding != null) {
+			headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+		}
+		if (ifNoneMatch != null) {
+			headers.setIfNoneMatch(ifNoneMatch);
+		}
+		return restTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+	}
+}
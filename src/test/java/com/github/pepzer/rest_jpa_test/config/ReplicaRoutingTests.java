@@ -0,0 +1,168 @@
+package com.github.pepzer.rest_jpa_test.config;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.concurrent.Executors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.Cookie;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.repository.AuthorRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.generate-unique-name=true", "database.replica.count=2",
+		"database.replica.max-lag=2s", "response-cache.enabled=false" })
+@AutoConfigureMockMvc
+public class ReplicaRoutingTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ReplicationStandIn replication;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private AuthorRepository authorRepository;
+
+	@Test
+	public void shouldReadFromTheReplicasAndWriteToThePrimary() throws Exception {
+
+		create("{\"firstName\": \"Meriadoc\", \"lastName\":\"Brandybuck\"}");
+		awaitReplicas();
+
+		// the migrations, the sample catalogue and the new author were replicated
+		for (ReplicationStandIn.Replica replica : replication.getReplicas()) {
+			JdbcTemplate jdbc = new JdbcTemplate(replica.getDataSource());
+			assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM authors WHERE lastname = 'Brandybuck'", Integer.class),
+					is(1));
+			assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM author_book", Integer.class), greaterThan(0));
+		}
+
+		double primary = reads("primary");
+		double first = reads("replica-1");
+		double second = reads("replica-2");
+		for (int i = 0; i < 4; i++) {
+			mockMvc.perform(get("/authors?embed=books")).andExpect(status().isOk())
+					.andExpect(jsonPath("$..lastName", hasItem("Brandybuck")));
+		}
+		assertThat(reads("primary"), is(primary));
+		assertThat(reads("replica-1"), greaterThan(first));
+		assertThat(reads("replica-2"), greaterThan(second));
+	}
+
+	@Test
+	public void shouldReadTheWritesOfAClientFromThePrimaryUntilTheReplicasHaveThem() throws Exception {
+
+		awaitReplicas();
+		replication.getReplicas().forEach(ReplicationStandIn.Replica::pause);
+		try {
+			MvcResult created = mockMvc
+					.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+							.content("{\"firstName\": \"Peregrin\", \"lastName\":\"Took\"}"))
+					.andExpect(status().isCreated()).andReturn();
+			String location = created.getResponse().getHeader("Location");
+			Cookie position = created.getResponse().getCookie(ReplicaRoutingDataSource.POSITION_COOKIE);
+			assertThat(position, notNullValue());
+
+			// Another client reads from a replica within the allowed lag, the author is not there yet
+			mockMvc.perform(get(location)).andExpect(status().isNotFound());
+
+			double primary = reads("primary");
+			mockMvc.perform(get(location).cookie(position)).andExpect(status().isOk());
+			assertThat(reads("primary"), is(primary + 1));
+
+			// Past the allowed lag everybody reads from the primary
+			Thread.sleep(2100);
+			mockMvc.perform(get("/authors")).andExpect(status().isOk());
+			assertThat(reads("primary"), is(primary + 2));
+		} finally {
+			replication.getReplicas().forEach(ReplicationStandIn.Replica::resume);
+		}
+
+		awaitReplicas();
+		double primary = reads("primary");
+		mockMvc.perform(get("/authors")).andExpect(status().isOk());
+		assertThat(reads("primary"), is(primary));
+	}
+
+	@Test
+	public void shouldRestoreTheCacheModeOfTheSessionAfterAStaleRead() throws Exception {
+
+		awaitReplicas();
+		replication.getReplicas().forEach(ReplicationStandIn.Replica::pause);
+		// The session of the request, open in view
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+		try {
+			// Another client writes, this thread reads from a replica behind the primary
+			Executors.newSingleThreadExecutor().submit(() -> authorRepository.save(new Author("Fredegar", "Bolger")))
+					.get();
+			TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+			readOnly.setReadOnly(true);
+			Session session = entityManager.unwrap(Session.class);
+			CacheMode during = readOnly.execute(status -> {
+				authorRepository.findAllViews(PageRequest.of(0, 1));
+				return session.getCacheMode();
+			});
+			assertThat(during, is(CacheMode.GET));
+			assertThat(session.getCacheMode(), is(CacheMode.NORMAL));
+		} finally {
+			TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+			entityManager.close();
+			replication.getReplicas().forEach(ReplicationStandIn.Replica::resume);
+		}
+	}
+
+	private void create(String json) throws Exception {
+		mockMvc.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json").content(json))
+				.andExpect(status().isCreated());
+	}
+
+	private void awaitReplicas() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (replication.getReplicas().stream()
+				.anyMatch(replica -> replica.getPosition() < replication.getPosition())) {
+			assertThat("replicas caught up", System.currentTimeMillis(), lessThan(deadline));
+			Thread.sleep(10);
+		}
+	}
+
+	private double reads(String target) {
+		return registry.get("database.routing.reads").tag("target", target).functionCounter().count();
+	}
+}
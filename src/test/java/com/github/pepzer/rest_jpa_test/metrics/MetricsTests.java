@@ -0,0 +1,68 @@
+package com.github.pepzer.rest_jpa_test.metrics;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.generate-unique-name=true", "sql.statement-budget=0" })
+@AutoConfigureMockMvc
+public class MetricsTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	public void shouldPublishRequestRepositoryAndHibernateMetrics() throws Exception {
+
+		mockMvc.perform(get("/authors?size=5")).andExpect(status().isOk());
+		mockMvc.perform(get("/books/search/findByIsbn?isbn={isbn}", "0123401234012")).andExpect(status().isOk());
+
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content().string(containsString(
+						"http_server_requests_seconds{exception=\"None\",method=\"GET\",status=\"200\",uri=\"/authors\",quantile=\"0.99\",}")))
+				.andExpect(content().string(containsString(
+						"http_server_requests_statements_count{method=\"GET\",uri=\"/authors\",}")))
+				.andExpect(content().string(containsString(
+						"repository_invocations_seconds_count{exception=\"none\",method=\"findAllViews\",repository=\"AuthorRepository\",}")))
+				.andExpect(content().string(containsString(
+						"repository_rows_sum{method=\"findAllViews\",repository=\"AuthorRepository\",}")))
+				.andExpect(content().string(containsString("hibernate_statements_total{")))
+				.andExpect(content().string(containsString("hikaricp_connections_acquire_seconds{")));
+	}
+
+	@Test
+	public void shouldFlagRequestsOverTheirStatementBudget() throws Exception {
+
+		String location = mockMvc
+				.perform(post("/authors").header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.content("{\"firstName\": \"Bilbo\", \"lastName\":\"Baggins\"}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+
+		MvcResult embedded = mockMvc.perform(get("/authors?embed=books")).andExpect(status().isOk()).andReturn();
+		RequestStatements statements = RequestStatements.of(embedded.getRequest());
+		assertThat(statements.getHandler(), is("AuthorController.getAuthors"));
+		assertThat(statements.getBudget(), is(4));
+		assertThat(statements.isWithinBudget(), is(true));
+		assertThat(statements.toString(), containsString(" where author0_.id in (...)"));
+
+		// Spring Data REST handlers have no budget of their own, sql.statement-budget applies
+		MvcResult books = mockMvc.perform(get(location + "/books")).andExpect(status().isOk()).andReturn();
+		statements = RequestStatements.of(books.getRequest());
+		assertThat(statements.getHandler(), is("RepositoryPropertyReferenceController.followPropertyReference"));
+		assertThat(statements.isWithinBudget(), is(false));
+		assertThat(statements.toString(), containsString("1 x select books0_.author_id"));
+	}
+}
@@ -0,0 +1,325 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.pepzer.rest_jpa_test.bulk.BulkDeleter;
+import com.github.pepzer.rest_jpa_test.bulk.BulkImporter;
+import com.github.pepzer.rest_jpa_test.bulk.BulkReport;
+import com.github.pepzer.rest_jpa_test.entity.Author;
+import com.github.pepzer.rest_jpa_test.entity.Book;
+import com.github.pepzer.rest_jpa_test.projection.AuthorView;
+import com.github.pepzer.rest_jpa_test.projection.BookView;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.generate-unique-name=true",
+		"spring.jpa.properties.hibernate.generate_statistics=true" })
+public class RepositoryStatementCountTests {
+
+	private static final int AUTHORS = 30;
+
+	@Autowired
+	private AuthorRepository authorRepository;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private CacheManager secondLevelCacheManager;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private BulkImporter bulkImporter;
+
+	@Autowired
+	private BulkDeleter bulkDeleter;
+
+	private Statistics statistics;
+
+	@Before
+	public void seed() {
+		bulkDeleter.deleteAuthors(Specification.where(null));
+		bulkDeleter.deleteBooks(Specification.where(null));
+		for (int i = 0; i < AUTHORS; i++) {
+			Author author = new Author("First" + i, "Last" + i);
+			author.getBooks().add(new Book(String.format("9%012d", 2 * i), "Title" + (2 * i)));
+			author.getBooks().add(new Book(String.format("9%012d", 2 * i + 1), "Title" + (2 * i + 1)));
+			authorRepository.save(author);
+		}
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	public void shouldFetchAuthorsWithBooksInBoundedStatements() {
+		int books = transactionTemplate.execute(status -> {
+			Page<Author> page = authorRepository.findAllWithBooks(PageRequest.of(0, 20, Sort.by("lastName")));
+			assertEquals(AUTHORS, page.getTotalElements());
+			assertEquals(20, page.getNumberOfElements());
+			return page.getContent().stream().mapToInt(author -> author.getBooks().size()).sum();
+		});
+
+		assertEquals(40, books);
+		// count, page of ids, fetch join
+		assertEquals(3, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void shouldFetchBooksWithAuthorsInBoundedStatements() {
+		int authors = transactionTemplate.execute(status -> {
+			Page<Book> page = bookRepository.findAllWithAuthors(PageRequest.of(0, 50));
+			assertEquals(2 * AUTHORS, page.getTotalElements());
+			assertEquals(50, page.getNumberOfElements());
+			return page.getContent().stream().mapToInt(book -> book.getAuthors().size()).sum();
+		});
+
+		assertEquals(50, authors);
+		assertEquals(3, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void shouldBatchLazyCollectionsOfAPage() {
+		int books = transactionTemplate.execute(status -> authorRepository.findAll(PageRequest.of(0, 20)).getContent()
+				.stream().mapToInt(author -> author.getBooks().size()).sum());
+
+		assertEquals(40, books);
+		// count, page, a single batch for the 20 lazy collections
+		assertEquals(3, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void shouldListViewsWithoutLoadingEntities() {
+		Page<AuthorView> authors = authorRepository.findAllViews(PageRequest.of(0, 20, Sort.by("lastName")));
+		Page<BookView> books = bookRepository.findAllViews(PageRequest.of(1, 20));
+
+		assertEquals(AUTHORS, authors.getTotalElements());
+		assertEquals("Last0", authors.getContent().get(0).getLastName());
+		assertEquals(20, books.getNumberOfElements());
+		assertEquals(0, statistics.getEntityLoadCount());
+		// count and page for each
+		assertEquals(4, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void shouldServeRepeatedLookupsFromTheSecondLevelCache() {
+		Author author = authorRepository.findAll().get(0);
+		String isbn = bookRepository.findAll().get(0).getISBN();
+		entityManagerFactory.getCache().evictAll();
+		statistics.clear();
+
+		authorRepository.findById(author.getId());
+		bookRepository.findByIsbn(isbn);
+		assertEquals(2, statistics.getPrepareStatementCount());
+
+		authorRepository.findById(author.getId());
+		bookRepository.findByIsbn(isbn);
+		assertEquals(2, statistics.getPrepareStatementCount());
+		assertEquals(1, statistics.getQueryCacheHitCount());
+	}
+
+	@Test
+	public void shouldCacheInTheCacheManagerOfTheContext() {
+		Author author = authorRepository.findAll().get(0);
+		entityManagerFactory.getCache().evictAll();
+		authorRepository.findById(author.getId());
+
+		// Not in the manager the caching provider shares by URI with the other contexts of the JVM
+		CacheManager shared = Caching.getCachingProvider(EhcacheCachingProvider.class.getName())
+				.getCacheManager(secondLevelCacheManager.getURI(), secondLevelCacheManager.getClassLoader());
+		try {
+			assertNotSame(shared, secondLevelCacheManager);
+			assertTrue(secondLevelCacheManager.getCache(Author.class.getName()).iterator().hasNext());
+			assertFalse(shared.getCache(Author.class.getName()).iterator().hasNext());
+		} finally {
+			shared.close();
+		}
+	}
+
+	@Test
+	public void shouldInvalidateCachedQueriesOnWrites() {
+		String isbn = bookRepository.findAll().get(0).getISBN();
+		bookRepository.findByIsbn("0123401234012");
+		assertFalse(bookRepository.findByIsbn("0123401234012").isPresent());
+
+		bookRepository.save(new Book("0123401234012", "The Hobbit"));
+		assertTrue(bookRepository.findByIsbn("0123401234012").isPresent());
+		assertTrue(bookRepository.findByIsbn(isbn).isPresent());
+	}
+
+	@Test
+	public void shouldBatchBulkInserts() throws Exception {
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			lines.append("{\"type\":\"author\",\"ref\":\"a").append(i)
+					.append("\",\"firstName\":\"Bulk\",\"lastName\":\"Author").append(i).append("\"}\n");
+			lines.append("{\"type\":\"book\",\"isbn\":\"").append(String.format("8%012d", i))
+					.append("\",\"title\":\"Bulk").append(i).append("\"}\n");
+			lines.append("{\"type\":\"link\",\"author\":\"a").append(i).append("\",\"isbn\":\"")
+					.append(String.format("8%012d", i)).append("\"}\n");
+		}
+
+		BulkReport report = bulkImporter.importLines(new BufferedReader(new StringReader(lines.toString())));
+
+		assertEquals(0, report.getErrors().size());
+		assertEquals(100, report.getLinks());
+		// the ISBN lookup, the pooled sequence calls and the batched inserts, not one statement per row
+		assertTrue(statistics.getPrepareStatementCount() <= 10);
+	}
+
+	@Test
+	public void shouldClearThePersistenceContextBetweenBulkChunks() throws Exception {
+		// 1200 authors and a link to an author of the first chunk: three chunks of 500 lines
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 1200; i++) {
+			lines.append("{\"type\":\"author\",\"ref\":\"a").append(i)
+					.append("\",\"firstName\":\"Bulk\",\"lastName\":\"Author").append(i).append("\"}\n");
+		}
+		lines.append("{\"type\":\"link\",\"author\":\"a0\",\"isbn\":\"").append(String.format("9%012d", 0))
+				.append("\"}\n");
+
+		// The EntityManager of a request with open-in-view, shared by the chunks
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+		List<Integer> managed = new ArrayList<>();
+		BulkReport report;
+		try {
+			report = bulkImporter.importLines(new BufferedReader(new StringReader(lines.toString())) {
+				@Override
+				public String readLine() throws IOException {
+					managed.add(entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+					return super.readLine();
+				}
+			});
+		} finally {
+			TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+			entityManager.close();
+		}
+
+		assertEquals(0, report.getErrors().size());
+		assertEquals(1200, report.getAuthors());
+		assertEquals(1, report.getLinks());
+		assertEquals(Collections.singleton(0), new HashSet<>(managed));
+	}
+
+	@Test
+	public void shouldLinkBooksWithoutLoadingThem() {
+		Author author = authorRepository.findAll(Sort.by("lastName")).get(0);
+		long version = author.getVersion();
+		// caches the author's books, the link must evict them
+		Long linked = transactionTemplate.execute(
+				status -> authorRepository.findById(author.getId()).get().getBooks().iterator().next().getId());
+		Long other = bookRepository.findByIsbn(String.format("9%012d", 2)).get().getId();
+		statistics.clear();
+
+		LinkReport report = authorRepository.linkBooks(author.getId(), Arrays.asList(linked, other, -1L)).get();
+
+		assertEquals(Collections.singletonList(other), report.getLinked());
+		assertEquals(Collections.singletonList(linked), report.getAlreadyLinked());
+		assertEquals(Collections.singletonList(-1L), report.getUnknown());
+		assertEquals(0, statistics.getEntityLoadCount());
+		assertEquals(0, statistics.getCollectionLoadCount());
+		assertEquals(version + 1, (long) authorRepository.findVersionById(author.getId()).get().getVersion());
+		assertEquals(3, (int) transactionTemplate
+				.execute(status -> authorRepository.findById(author.getId()).get().getBooks().size()));
+
+		// linking again changes nothing
+		report = authorRepository.linkBooks(author.getId(), Collections.singleton(other)).get();
+		assertEquals(Collections.singletonList(other), report.getAlreadyLinked());
+		assertEquals(version + 1, (long) authorRepository.findVersionById(author.getId()).get().getVersion());
+		assertFalse(authorRepository.linkBooks(-1L, Collections.singleton(other)).isPresent());
+	}
+
+	@Test
+	public void shouldLinkConcurrentlyToTheSameAuthor() throws Exception {
+		Author author = authorRepository.findAll(Sort.by("lastName")).get(0);
+		// ordered by ISBN, the first two are the author's
+		List<Long> bookIds = bookRepository.findAll(Sort.by("ISBN")).stream().map(Book::getId)
+				.collect(Collectors.toList());
+
+		// every task links one book of its own and one shared by all
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Optional<LinkReport>>> links = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			List<Long> ids = Arrays.asList(bookIds.get(10 + i), bookIds.get(40));
+			links.add(executor.submit(() -> authorRepository.linkBooks(author.getId(), ids)));
+		}
+		for (Future<Optional<LinkReport>> link : links) {
+			assertTrue(link.get(10, TimeUnit.SECONDS).isPresent());
+		}
+		executor.shutdown();
+
+		assertEquals(2 + 16 + 1, (int) transactionTemplate
+				.execute(status -> authorRepository.findById(author.getId()).get().getBooks().size()));
+	}
+
+	@Test
+	public void shouldDeleteInBulkWithoutLoadingEntities() {
+		Author author = authorRepository.findAll(Sort.by("lastName")).get(0);
+		long version = author.getVersion();
+		// caches the author's books, deleting them must evict the collection
+		List<Long> books = transactionTemplate.execute(status -> authorRepository.findById(author.getId()).get()
+				.getBooks().stream().map(Book::getId).collect(Collectors.toList()));
+		statistics.clear();
+
+		assertEquals(2, bulkDeleter.deleteBooks(books));
+		assertEquals(0, statistics.getEntityLoadCount());
+		assertEquals(0, statistics.getCollectionLoadCount());
+		assertEquals(version + 1, (long) authorRepository.findVersionById(author.getId()).get().getVersion());
+		assertEquals(0, (int) transactionTemplate
+				.execute(status -> authorRepository.findById(author.getId()).get().getBooks().size()));
+
+		// Last1 and Last10 to Last19, their books stay without authors
+		Specification<Author> filter = (root, query, builder) -> builder.like(root.get("lastName"), "Last1%");
+		assertEquals(11, bulkDeleter.deleteAuthors(filter));
+		assertEquals(AUTHORS - 11, authorRepository.count());
+		assertEquals(2 * AUTHORS - 2, bookRepository.count());
+		assertEquals(1, bulkDeleter.deleteAuthors(Arrays.asList(author.getId(), -1L)));
+		assertEquals(0, bulkDeleter.deleteAuthors(Collections.singleton(author.getId())));
+	}
+}
@@ -0,0 +1,51 @@
+package com.github.pepzer.rest_jpa_test.repository;
+
+import static org.hamcrest.Matchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.generate-unique-name=true")
+@ActiveProfiles("sample")
+public class SchemaMigrationTests {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void shouldApplyAllMigrations() {
+		assertEquals(Integer.valueOf(2), jdbcTemplate
+				.queryForObject("SELECT count(*) FROM \"flyway_schema_history\" WHERE \"success\"", Integer.class));
+		assertEquals(Integer.valueOf(4),
+				jdbcTemplate.queryForObject("SELECT count(*) FROM authors WHERE id <= 4", Integer.class));
+	}
+
+	@Test
+	public void shouldDeclareTheLookupIndexes() {
+		List<String> indexes = jdbcTemplate.queryForList(
+				"SELECT index_name FROM information_schema.indexes WHERE table_schema = 'PUBLIC'", String.class);
+		assertThat(indexes, hasItems("IX_AUTHORS_LASTNAME_ID", "IX_BOOKS_TITLE_ID", "IX_AUTHOR_BOOK_BOOK_ID"));
+	}
+
+	@Test(expected = DataIntegrityViolationException.class)
+	public void shouldRejectDuplicateIsbn() {
+		jdbcTemplate.update("INSERT INTO books (id, isbn, title) VALUES (1000, '0123456789012', 'Copy')");
+	}
+
+	@Test(expected = DataIntegrityViolationException.class)
+	public void shouldRejectDuplicateLinks() {
+		jdbcTemplate.update("INSERT INTO author_book (author_id, book_id) VALUES (1, 1)");
+	}
+}
@@ -0,0 +1,58 @@
+package com.github.pepzer.rest_jpa_test.search;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+public class TextIndexTests {
+
+	private TextIndex index;
+
+	@Before
+	public void fill() {
+		index = new TextIndex();
+		index.put(1, "The Hobbit, or There and Back Again");
+		index.put(2, "The Hobbit");
+		index.put(3, "Hobbitses");
+		index.put(4, "Les Misérables");
+		index.put(5, "The Lord of the Rings");
+	}
+
+	@Test
+	public void shouldMatchPrefixesIgnoringCaseAndAccents() {
+		assertThat(index.search("hob", PageRequest.of(0, 10)).getContent(), contains(3L, 2L, 1L));
+		assertThat(index.search("MISERABLE", PageRequest.of(0, 10)).getContent(), contains(4L));
+		assertThat(index.search("lord ring", PageRequest.of(0, 10)).getContent(), contains(5L));
+		assertThat(index.search("lord hobbit", PageRequest.of(0, 10)).getContent(), empty());
+	}
+
+	@Test
+	public void shouldRankExactMatchesAndShorterTextsFirst() {
+		// "hobbit" is a whole token of 1 and 2, only a prefix of a token of 3
+		assertThat(index.search("hobbit", PageRequest.of(0, 10)).getContent(), contains(2L, 1L, 3L));
+		assertThat(index.search("the hobbit", PageRequest.of(0, 10)).getContent(), contains(2L, 1L));
+	}
+
+	@Test
+	public void shouldPageResults() {
+		Page<Long> page = index.search("hobbit", PageRequest.of(1, 2));
+		assertEquals(3, page.getTotalElements());
+		assertThat(page.getContent(), contains(3L));
+	}
+
+	@Test
+	public void shouldFollowUpdatesAndRemovals() {
+		index.put(2, "The Silmarillion");
+		index.remove(3);
+		assertThat(index.search("hobbit", PageRequest.of(0, 10)).getContent(), contains(1L));
+		assertThat(index.search("silm", PageRequest.of(0, 10)).getContent(), contains(2L));
+		assertEquals(4, index.size());
+	}
+}